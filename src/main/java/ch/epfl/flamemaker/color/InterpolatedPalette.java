@@ -55,4 +55,30 @@ public final class InterpolatedPalette implements Palette {
         return colorPalette.get((int) Math.floor(index)).mixWidth(
                 colorPalette.get((int) Math.ceil(index)), index % 1);
     }
+
+    /**
+     * Interpolates the entries directly, without creating any {@code Color}
+     */
+    @Override
+    public PaletteTable compile(final int resolution) {
+        PaletteTable.checkResolution(resolution);
+
+        final double[] reds = new double[resolution];
+        final double[] greens = new double[resolution];
+        final double[] blues = new double[resolution];
+
+        for (int i = 0; i < resolution; ++i) {
+            // The same interpolation as colorForIndex()
+            final double index = (double) i / (resolution - 1) * (colorPalette.size() - 1);
+            final Color lower = colorPalette.get((int) Math.floor(index));
+            final Color upper = colorPalette.get((int) Math.ceil(index));
+            final double proportion = index % 1;
+
+            reds[i] = upper.red() * proportion + (1.0 - proportion) * lower.red();
+            greens[i] = upper.green() * proportion + (1.0 - proportion) * lower.green();
+            blues[i] = upper.blue() * proportion + (1.0 - proportion) * lower.blue();
+        }
+
+        return new PaletteTable(reds, greens, blues);
+    }
 }
@@ -12,4 +12,16 @@ public interface Palette {
      * @return the {@code Color} for the specified index
      */
     Color colorForIndex(final double index);
+
+    /**
+     * Compiles the {@code Palette} into a lookup table of evenly spaced indexes,
+     * by default asking {@link #colorForIndex(double)} for every entry
+     *
+     * @param resolution amount of entries
+     * @return the compiled {@code Palette}
+     * @throws java.lang.IllegalArgumentException if the resolution is less than two
+     */
+    default PaletteTable compile(final int resolution) {
+        return PaletteTable.sample(this, resolution);
+    }
 }
@@ -0,0 +1,172 @@
+package ch.epfl.flamemaker.color;
+
+/**
+ * A {@code Palette} compiled into a lookup table: the colors of a fixed amount of evenly spaced
+ * indexes, stored as linear components and as packed RGB integers. Looking up a color only rounds
+ * the index to the nearest entry, without validating or creating any {@code Color}
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class PaletteTable implements Palette {
+
+    /**
+     * Amount of entries used if nothing else is specified
+     */
+    public static final int DEFAULT_RESOLUTION = 4096;
+
+    /**
+     * Red components of the entries
+     */
+    private final double[] reds;
+
+    /**
+     * Green components of the entries
+     */
+    private final double[] greens;
+
+    /**
+     * Blue components of the entries
+     */
+    private final double[] blues;
+
+    /**
+     * The entries as packed RGB integers (0xRRGGBB)
+     */
+    private final int[] packed;
+
+    /**
+     * Creates a new {@code PaletteTable} from the components of its entries, which are adopted
+     *
+     * @param reds   red components of the entries
+     * @param greens green components of the entries
+     * @param blues  blue components of the entries
+     */
+    PaletteTable(final double[] reds, final double[] greens, final double[] blues) {
+        this.reds = reds;
+        this.greens = greens;
+        this.blues = blues;
+
+        packed = new int[reds.length];
+        for (int i = 0; i < packed.length; ++i) {
+            packed[i] = (Color.sRGBEncode(reds[i], 255) << 16)
+                    + (Color.sRGBEncode(greens[i], 255) << 8)
+                    + Color.sRGBEncode(blues[i], 255);
+        }
+    }
+
+    /**
+     * Compiles any {@code Palette} by asking it for the color of every entry
+     *
+     * @param palette    to compile
+     * @param resolution amount of entries
+     * @return the compiled {@code Palette}
+     * @throws java.lang.IllegalArgumentException if the resolution is less than two
+     */
+    public static PaletteTable sample(final Palette palette, final int resolution) {
+        checkResolution(resolution);
+
+        final double[] reds = new double[resolution];
+        final double[] greens = new double[resolution];
+        final double[] blues = new double[resolution];
+
+        for (int i = 0; i < resolution; ++i) {
+            final Color color = palette.colorForIndex((double) i / (resolution - 1));
+            reds[i] = color.red();
+            greens[i] = color.green();
+            blues[i] = color.blue();
+        }
+
+        return new PaletteTable(reds, greens, blues);
+    }
+
+    /**
+     * @param resolution amount of entries
+     * @throws java.lang.IllegalArgumentException if the resolution is less than two
+     */
+    static void checkResolution(final int resolution) {
+        if (resolution < 2) {
+            throw new IllegalArgumentException("Resolution must at least be two");
+        }
+    }
+
+    /**
+     * @return the amount of entries
+     */
+    public int resolution() {
+        return packed.length;
+    }
+
+    /**
+     * Rounds the index to the nearest entry, indexes outside of 0 and 1.0 are clamped
+     *
+     * @param index of the color
+     * @return the entry of the specified index
+     */
+    public int entry(final double index) {
+        return (int) (Math.min(1.0, Math.max(0.0, index)) * (packed.length - 1) + 0.5);
+    }
+
+    /**
+     * @param entry of the table
+     * @return the red component of the entry
+     */
+    public double red(final int entry) {
+        return reds[entry];
+    }
+
+    /**
+     * @param entry of the table
+     * @return the green component of the entry
+     */
+    public double green(final int entry) {
+        return greens[entry];
+    }
+
+    /**
+     * @param entry of the table
+     * @return the blue component of the entry
+     */
+    public double blue(final int entry) {
+        return blues[entry];
+    }
+
+    /**
+     * @param entry of the table
+     * @return the entry as packed RGB integer (0xRRGGBB), the same as {@link Color#asPackedRGB()}
+     */
+    public int packedRGB(final int entry) {
+        return packed[entry];
+    }
+
+    /**
+     * @param index of the color
+     * @return the packed RGB integer (0xRRGGBB) of the nearest entry
+     */
+    public int packedRGB(final double index) {
+        return packed[entry(index)];
+    }
+
+    /**
+     * @throws java.lang.IllegalArgumentException if the index is not greater or equal than zero and less or equal than 1.0
+     */
+    @Override
+    public Color colorForIndex(final double index) {
+        if (index < 0.0 || index > 1.0) {
+            throw new IllegalArgumentException("Index must be greater or equal than zero and less or equal than 1.0");
+        }
+
+        final int entry = entry(index);
+
+        return new Color(reds[entry], greens[entry], blues[entry]);
+    }
+
+    /**
+     * Returns the table itself if it already has the specified resolution
+     */
+    @Override
+    public PaletteTable compile(final int resolution) {
+        return (resolution == resolution()) ? this : Palette.super.compile(resolution);
+    }
+}
@@ -47,4 +47,12 @@ public final class RandomPalette implements Palette {
     public Color colorForIndex(final double index) {
         return palette.colorForIndex(index);
     }
+
+    /**
+     * @see InterpolatedPalette
+     */
+    @Override
+    public PaletteTable compile(final int resolution) {
+        return palette.compile(resolution);
+    }
 }
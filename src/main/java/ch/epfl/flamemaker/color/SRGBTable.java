@@ -0,0 +1,117 @@
+package ch.epfl.flamemaker.color;
+
+/**
+ * Encodes linear components like {@link Color#sRGBEncode(double, int)} for a fixed maximal value,
+ * using tables instead of computing powers: a table of evenly spaced components gives a first
+ * guess, which is corrected by comparing the component with the lowest component of every value.
+ * The result is exactly the one of {@code Color.sRGBEncode}
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class SRGBTable {
+
+    /**
+     * Highest maximal value, the one of 16-bit samples
+     */
+    public static final int MAX_VALUE = 65535;
+
+    /**
+     * The table for 8-bit samples, which is used most often
+     */
+    private static final SRGBTable BYTE = new SRGBTable(255);
+
+    /**
+     * The maximal value of the encoded components
+     */
+    private final int maxValue;
+
+    /**
+     * The lowest component of every value, positive infinity for values never reached
+     */
+    private final double[] thresholds;
+
+    /**
+     * A lower bound of the value of the components in every interval of the table
+     */
+    private final int[] guesses;
+
+    /**
+     * Computes the tables for the specified maximal value
+     *
+     * @param maxValue the maximal value of the encoded components
+     */
+    private SRGBTable(final int maxValue) {
+        this.maxValue = maxValue;
+
+        thresholds = new double[maxValue + 2];
+        final int highest = Color.sRGBEncode(1.0, maxValue);
+
+        // Finds the lowest component encoded to every value by bisection, the encoding being monotonic
+        for (int value = 1; value < thresholds.length; ++value) {
+            if (highest < value) {
+                thresholds[value] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+
+            double low = 0;
+            double high = 1;
+            while (Math.nextUp(low) < high) {
+                final double middle = low + (high - low) / 2;
+                if (Color.sRGBEncode(middle, maxValue) >= value) {
+                    high = middle;
+                } else {
+                    low = middle;
+                }
+            }
+            thresholds[value] = high;
+        }
+
+        // About sixteen intervals per value, so a guess is corrected at most a few times
+        final int size = Integer.highestOneBit(16 * maxValue);
+        guesses = new int[size + 1];
+
+        // The value of the lower end of the interval before, so rounding never leads to a guess too high
+        for (int i = 0; i <= size; ++i) {
+            guesses[i] = Color.sRGBEncode(Math.max(0, i - 1) / (double) size, maxValue);
+        }
+    }
+
+    /**
+     * Returns the table for the specified maximal value, computing it if it is not the one of 8-bit samples
+     *
+     * @param maxValue the maximal value of the encoded components
+     * @return the table for the maximal value
+     * @throws java.lang.IllegalArgumentException if the maximal value is not greater than zero or
+     *                                            greater than {@link #MAX_VALUE}
+     */
+    public static SRGBTable forMaxValue(final int maxValue) {
+        if (maxValue <= 0 || maxValue > MAX_VALUE) {
+            throw new IllegalArgumentException("Maximal value must be between 1 and " + MAX_VALUE);
+        }
+
+        return (maxValue == BYTE.maxValue) ? BYTE : new SRGBTable(maxValue);
+    }
+
+    /**
+     * @return the maximal value of the encoded components
+     */
+    public int maxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @param component linear component of a {@code Color}, between zero and 1.0
+     * @return the same as {@code Color.sRGBEncode(component, maxValue())}
+     */
+    public int encode(final double component) {
+        int value = guesses[(int) (component * (guesses.length - 1))];
+
+        while (component >= thresholds[value + 1]) {
+            ++value;
+        }
+
+        return value;
+    }
+}
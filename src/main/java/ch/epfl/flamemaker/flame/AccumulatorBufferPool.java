@@ -0,0 +1,248 @@
+package ch.epfl.flamemaker.flame;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A pool of the large arrays used by {@code FlameAccumulators} and their builders, so rendering
+ * one job after the other reuses the arrays of the previous jobs instead of allocating new ones.
+ * <p>
+ * The requested lengths are rounded up to size classes (four per power of two, so at most a
+ * quarter of an array is unused), every size class keeping its own arrays. Released arrays are
+ * cleared, so taken arrays are always filled with zeros. The pool retains arrays up to a bounded
+ * amount of bytes, arrays released beyond it are left to the garbage collector. Arrays shorter
+ * than {@link #MIN_POOLED_LENGTH} are not pooled at all.
+ * <p>
+ * The pool remembers the arrays it handed out, so releasing an array it did not hand out, or
+ * releasing one twice, is ignored. Arrays handed out but never released are not kept alive by it
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class AccumulatorBufferPool {
+
+    /**
+     * Minimal length of the pooled arrays, shorter ones are cheap to allocate
+     */
+    public static final int MIN_POOLED_LENGTH = 1 << 12;
+
+    /**
+     * Maximal length of an array supported by the virtual machine
+     */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * Pool shared by default, retaining up to a quarter of the maximal heap size
+     */
+    private static final AccumulatorBufferPool SHARED = new AccumulatorBufferPool(Runtime.getRuntime().maxMemory() / 4);
+
+    /**
+     * The retained integer arrays by length
+     */
+    private final Map<Integer, ArrayDeque<int[]>> intArrays = new HashMap<>();
+
+    /**
+     * The retained double arrays by length
+     */
+    private final Map<Integer, ArrayDeque<double[]>> doubleArrays = new HashMap<>();
+
+    /**
+     * The arrays handed out and not released yet, weakly referenced (arrays are compared by identity)
+     */
+    private final Set<Object> taken = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Maximal amount of bytes retained
+     */
+    private final long maxRetainedBytes;
+
+    /**
+     * Amount of bytes currently retained
+     */
+    private long retainedBytes = 0;
+
+    /**
+     * Creates a new {@code AccumulatorBufferPool}
+     *
+     * @param maxRetainedBytes maximal amount of bytes of the arrays retained by the pool
+     * @throws java.lang.IllegalArgumentException if the amount of bytes is negative
+     */
+    public AccumulatorBufferPool(final long maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("Amount of bytes must not be negative");
+        }
+
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return the pool shared by default, retaining up to a quarter of the maximal heap size
+     */
+    public static AccumulatorBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the amount of bytes currently retained by the pool
+     */
+    public synchronized long retainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * @param length minimal length of the array
+     * @return an integer array of at least the specified length filled with zeros
+     */
+    public int[] takeInts(final int length) {
+        final int size = sizeClass(length);
+
+        if (size >= MIN_POOLED_LENGTH) {
+            synchronized (this) {
+                final ArrayDeque<int[]> arrays = intArrays.get(size);
+                if (arrays != null && !arrays.isEmpty()) {
+                    retainedBytes -= (long) size * Integer.BYTES;
+                    return handOut(arrays.pop());
+                }
+            }
+
+            // Allocates outside of the lock
+            return handOut(new int[size]);
+        }
+
+        return new int[size];
+    }
+
+    /**
+     * @param length minimal length of the array
+     * @return a double array of at least the specified length filled with zeros
+     */
+    public double[] takeDoubles(final int length) {
+        final int size = sizeClass(length);
+
+        if (size >= MIN_POOLED_LENGTH) {
+            synchronized (this) {
+                final ArrayDeque<double[]> arrays = doubleArrays.get(size);
+                if (arrays != null && !arrays.isEmpty()) {
+                    retainedBytes -= (long) size * Double.BYTES;
+                    return handOut(arrays.pop());
+                }
+            }
+
+            // Allocates outside of the lock
+            return handOut(new double[size]);
+        }
+
+        return new double[size];
+    }
+
+    /**
+     * Returns an array taken from this pool, which must not be used anymore
+     *
+     * @param array to return, ignored if {@code null}, not taken from this pool or released already
+     */
+    public void release(final int[] array) {
+        if (array == null || !isPooled(array.length) || !forget(array)) {
+            return;
+        }
+
+        // Clears the array outside of the lock
+        Arrays.fill(array, 0);
+
+        synchronized (this) {
+            final long bytes = (long) array.length * Integer.BYTES;
+            if (retainedBytes + bytes <= maxRetainedBytes) {
+                intArrays.computeIfAbsent(array.length, size -> new ArrayDeque<>()).push(array);
+                retainedBytes += bytes;
+            }
+        }
+    }
+
+    /**
+     * Returns an array taken from this pool, which must not be used anymore
+     *
+     * @param array to return, ignored if {@code null}, not taken from this pool or released already
+     */
+    public void release(final double[] array) {
+        if (array == null || !isPooled(array.length) || !forget(array)) {
+            return;
+        }
+
+        // Clears the array outside of the lock
+        Arrays.fill(array, 0);
+
+        synchronized (this) {
+            final long bytes = (long) array.length * Double.BYTES;
+            if (retainedBytes + bytes <= maxRetainedBytes) {
+                doubleArrays.computeIfAbsent(array.length, size -> new ArrayDeque<>()).push(array);
+                retainedBytes += bytes;
+            }
+        }
+    }
+
+    /**
+     * Remembers an array handed out by the pool
+     *
+     * @param array to hand out
+     * @param <T>   type of the array
+     * @return the array
+     */
+    private synchronized <T> T handOut(final T array) {
+        taken.add(array);
+        return array;
+    }
+
+    /**
+     * Forgets an array handed out by the pool
+     *
+     * @param array to forget
+     * @return whether the array was handed out by the pool and not released yet
+     */
+    private synchronized boolean forget(final Object array) {
+        return taken.remove(array);
+    }
+
+    /**
+     * Removes all the retained arrays
+     */
+    public synchronized void clear() {
+        intArrays.clear();
+        doubleArrays.clear();
+        retainedBytes = 0;
+    }
+
+    /**
+     * @param length of an array
+     * @return the length rounded up to the next size class: multiples of a quarter of the
+     * power of two below the length, or the length itself if it is too short or too long to be pooled
+     * @throws java.lang.IllegalArgumentException if the length is negative
+     */
+    static int sizeClass(final int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Length must not be negative");
+        }
+        if (length <= MIN_POOLED_LENGTH) {
+            return length;
+        }
+
+        // 2^k < length <= 2^(k + 1), rounded up to a multiple of 2^(k - 2)
+        final int k = 31 - Integer.numberOfLeadingZeros(length - 1);
+        final long step = 1L << (k - 2);
+        final long size = (length + step - 1) / step * step;
+
+        return (size > MAX_ARRAY_LENGTH) ? length : (int) size;
+    }
+
+    /**
+     * @param length of an array
+     * @return whether arrays of the specified length are pooled
+     */
+    private static boolean isPooled(final int length) {
+        return length >= MIN_POOLED_LENGTH && sizeClass(length) == length;
+    }
+}
@@ -0,0 +1,285 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Renders the frames of a {@code FlameAnimation}, either to numbered image files (.png or .ppm)
+ * or as a raw YUV4MPEG2 stream (.y4m, 4:4:4), which video encoders read from a pipe.
+ * <p>
+ * The frames are computed and encoded by several threads at once and written in order by the
+ * calling thread. At most {@link #FRAMES_PER_THREAD} frames per thread are in flight, so the
+ * memory used does not depend on the length of the animation. Every frame is computed with the
+ * same seed, so the parts of the {@code Flame} which hardly change between two frames do not
+ * flicker
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class AnimationRenderer {
+
+    /**
+     * Amount of frames per thread computed or waiting to be written at a time
+     */
+    public static final int FRAMES_PER_THREAD = 2;
+
+    /**
+     * Seed of the random number generator of every frame
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    /**
+     * The frame limiting the area
+     */
+    private final Rectangle frame;
+
+    /**
+     * Width of the frames
+     */
+    private final int width;
+
+    /**
+     * Height of the frames
+     */
+    private final int height;
+
+    /**
+     * Iterations per field
+     */
+    private final int density;
+
+    /**
+     * Converts the accumulators to colors
+     */
+    private final FlameRasterizer rasterizer;
+
+    /**
+     * Amount of threads computing frames
+     */
+    private final int threads;
+
+    /**
+     * Encodes a computed frame, called by several threads at once
+     */
+    private interface FrameEncoder {
+
+        /**
+         * @param accumulator of the frame
+         * @return the bytes written for the frame
+         * @throws IOException if the frame could not be encoded
+         */
+        byte[] encode(final FlameAccumulator accumulator) throws IOException;
+    }
+
+    /**
+     * Writes the encoded frames in order, called by the calling thread only
+     */
+    private interface FrameSink {
+
+        /**
+         * @param index of the frame
+         * @param bytes of the encoded frame
+         * @throws IOException if the frame could not be written
+         */
+        void write(final int index, final byte[] bytes) throws IOException;
+    }
+
+    /**
+     * Creates a new {@code AnimationRenderer}
+     *
+     * @param frame      limiting the area
+     * @param width      of the frames
+     * @param height     of the frames
+     * @param density    iterations per field
+     * @param palette    {@code Palette} for painting the {@code Flames}
+     * @param background {@code Color} of the fields which were not hit
+     * @param threads    amount of threads computing frames
+     * @throws java.lang.IllegalArgumentException if the width, the height, the density or the amount of
+     *                                            threads is not greater than zero
+     */
+    public AnimationRenderer(final Rectangle frame, final int width, final int height, final int density,
+                             final Palette palette, final Color background, final int threads) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be greater than zero");
+        }
+        if (density <= 0) {
+            throw new IllegalArgumentException("Density must be greater than zero");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Amount of threads must be greater than zero");
+        }
+
+        this.frame = frame;
+        this.width = width;
+        this.height = height;
+        this.density = density;
+        this.rasterizer = new FlameRasterizer(palette, background);
+        this.threads = threads;
+    }
+
+    /**
+     * Writes every frame to its own file, replacing it if it exists
+     *
+     * @param animation to render
+     * @param pattern   of the file names, formatted with the index of the frame, e.g.
+     *                  {@code "frames/%04d.png"}; the extension (.png or .ppm) determines the format
+     * @throws IOException                        if a file could not be written
+     * @throws java.lang.IllegalArgumentException if the extension is neither .png nor .ppm
+     */
+    public void writeFiles(final FlameAnimation animation, final String pattern) throws IOException {
+        final String extension = pattern.substring(pattern.lastIndexOf('.') + 1).toLowerCase();
+        final FrameEncoder encoder;
+
+        switch (extension) {
+            case "png": {
+                final PNGWriter writer = new PNGWriter(rasterizer, Deflater.DEFAULT_COMPRESSION, 1);
+                encoder = accumulator -> {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    writer.write(accumulator, 0, 0, width, height, bytes);
+                    return bytes.toByteArray();
+                };
+            }
+            break;
+            case "ppm": {
+                final byte[] header = String.format("P6\n%d %d\n255\n", width, height)
+                        .getBytes(StandardCharsets.US_ASCII);
+                encoder = accumulator -> {
+                    final byte[] bytes = Arrays.copyOf(header, header.length + 3 * width * height);
+                    rasterizer.toRGBBytes(accumulator, 0, 0, width, height, bytes, header.length, 3 * width);
+                    return bytes;
+                };
+            }
+            break;
+            default:
+                throw new IllegalArgumentException("Unsupported image format: " + extension);
+        }
+
+        render(animation, encoder, (index, bytes) -> Files.write(Paths.get(String.format(pattern, index)), bytes));
+    }
+
+    /**
+     * Writes the frames as YUV4MPEG2 stream, the colors being converted to full-resolution
+     * chroma with the coefficients and the limited range of BT.601
+     *
+     * @param animation       to render
+     * @param framesPerSecond frame rate stored in the header
+     * @param out             to write to, neither flushed nor closed
+     * @throws IOException                        if the stream could not be written
+     * @throws java.lang.IllegalArgumentException if the frame rate is not greater than zero
+     */
+    public void writeY4M(final FlameAnimation animation, final int framesPerSecond, final OutputStream out)
+            throws IOException {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frame rate must be greater than zero");
+        }
+
+        out.write(String.format("YUV4MPEG2 W%d H%d F%d:1 Ip A1:1 C444\n", width, height, framesPerSecond)
+                .getBytes(StandardCharsets.US_ASCII));
+
+        final byte[] frameHeader = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+        final int size = width * height;
+
+        render(animation, accumulator -> {
+            final byte[] rgb = new byte[3 * size];
+            rasterizer.toRGBBytes(accumulator, rgb);
+
+            // The header followed by the planes Y, Cb and Cr
+            final byte[] bytes = Arrays.copyOf(frameHeader, frameHeader.length + 3 * size);
+            final int y = frameHeader.length;
+            final int cb = y + size;
+            final int cr = cb + size;
+
+            for (int i = 0; i < size; ++i) {
+                final int r = rgb[3 * i] & 0xFF;
+                final int g = rgb[3 * i + 1] & 0xFF;
+                final int b = rgb[3 * i + 2] & 0xFF;
+
+                bytes[y + i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+                bytes[cb + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                bytes[cr + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+            }
+
+            return bytes;
+        }, (index, bytes) -> out.write(bytes));
+    }
+
+    /**
+     * Computes and encodes the frames in parallel and writes them in order
+     *
+     * @param animation to render
+     * @param encoder   encoding the computed frames
+     * @param sink      writing the encoded frames
+     * @throws IOException if a frame could not be encoded or written
+     */
+    private void render(final FlameAnimation animation, final FrameEncoder encoder, final FrameSink sink)
+            throws IOException {
+        final int frames = animation.frameCount();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+
+        try {
+            int next = 0;
+            for (int written = 0; written < frames; ++written) {
+
+                // Keeps the threads busy while the oldest frame is awaited
+                while (next < frames && pending.size() < FRAMES_PER_THREAD * threads) {
+                    final Flame flame = animation.frame(next++);
+                    pending.add(executor.submit(() -> {
+                        final FlameAccumulator accumulator = flame.compute(frame, width, height, density, SEED);
+                        try {
+                            return encoder.encode(accumulator);
+                        } catch (final IOException exception) {
+                            throw new UncheckedIOException(exception);
+                        } finally {
+                            accumulator.release();
+                        }
+                    }));
+                }
+
+                sink.write(written, await(pending.remove()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits until a frame is encoded
+     *
+     * @param future of the encoded frame
+     * @return the bytes of the encoded frame
+     * @throws IOException if the frame could not be encoded or the thread was interrupted
+     */
+    private static byte[] await(final Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering frames");
+        } catch (final ExecutionException exception) {
+            if (exception.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) exception.getCause()).getCause();
+            }
+            throw new IOException("Could not render frame", exception.getCause());
+        }
+    }
+}
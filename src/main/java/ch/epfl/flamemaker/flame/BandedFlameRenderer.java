@@ -0,0 +1,198 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Renders a {@code Flame} too big for the memory band by band: The frame is divided into
+ * horizontal bands and the seeded chaos algorithm is run once per band, keeping only the
+ * hits falling into the band. Since every run uses the same seed, the bands fit together
+ * to one single coherent fractal, while at most one band has to be kept in memory.
+ * <p>
+ * The intensities of all bands have to be relative to the highest hit count of the whole
+ * fractal, so the bands are computed twice: a first sweep (from the bottom to the top band)
+ * finds the highest hit count, a second sweep (from the top to the bottom band) writes the
+ * rows to the file. The top band computed last by the first sweep is written directly, so a
+ * render with {@code n} bands needs {@code 2n - 1} runs, see {@link #passes(int)}
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class BandedFlameRenderer {
+
+    /**
+     * The {@code Flame} to render
+     */
+    private final Flame flame;
+
+    /**
+     * {@code Rectangle} limiting the area
+     */
+    private final Rectangle frame;
+
+    /**
+     * Width of the image
+     */
+    private final int width;
+
+    /**
+     * Height of the image
+     */
+    private final int height;
+
+    /**
+     * Iterations per field
+     */
+    private final int density;
+
+    /**
+     * Seed of the random number generator, shared by all runs
+     */
+    private final long seed;
+
+    /**
+     * Amount of rows per band
+     */
+    private final int rowsPerBand;
+
+    /**
+     * Amount of bands
+     */
+    private final int bands;
+
+    /**
+     * Creates a new {@code BandedFlameRenderer}
+     *
+     * @param flame   to render
+     * @param frame   limiting the area
+     * @param width   of the image
+     * @param height  of the image
+     * @param density : iterations per field
+     * @param seed    of the random number generator
+     * @param bands   amount of bands to divide the image into (at most one per row)
+     * @throws java.lang.IllegalArgumentException if the width, the height or the amount of bands
+     *                                            are not greater than zero or if a band is too large
+     */
+    public BandedFlameRenderer(final Flame flame, final Rectangle frame, final int width, final int height,
+                               final int density, final long seed, final int bands) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be greater than zero");
+        }
+        if (bands <= 0) {
+            throw new IllegalArgumentException("Amount of bands must be greater than zero");
+        }
+
+        this.flame = flame;
+        this.frame = frame;
+        this.width = width;
+        this.height = height;
+        this.density = density;
+        this.seed = seed;
+
+        // Rounds up, so the bands cover all rows (the last band may be smaller)
+        rowsPerBand = (height - 1) / Math.min(bands, height) + 1;
+        this.bands = (height - 1) / rowsPerBand + 1;
+
+        if ((long) rowsPerBand * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bands are too large, use more bands");
+        }
+    }
+
+    /**
+     * @param bands amount of bands
+     * @return the amount of runs of the chaos algorithm needed for rendering the specified amount of bands
+     */
+    public static int passes(final int bands) {
+        return 2 * bands - 1;
+    }
+
+    /**
+     * @return the amount of bands the image is divided into
+     */
+    public int bands() {
+        return bands;
+    }
+
+    /**
+     * @return the amount of iterations of every run, the same as for rendering the image at once
+     */
+    public long iterationsPerPass() {
+        return (long) density * width * height;
+    }
+
+    /**
+     * Renders the {@code Flame} and streams it to a .ppm-file, band by band
+     *
+     * @param palette    {@code Palette} for painting the {@code Flame}
+     * @param background {@code Color}
+     * @param filename   of the .ppm-file (Including path)
+     * @return the total amount of iterations performed
+     * @throws IOException if the file could not be written
+     */
+    public long render(final Palette palette, final Color background, final String filename) throws IOException {
+        // First sweep: finds the highest hit count, from the bottom to the top band
+        int max = 0;
+        for (int band = 0; band < bands - 1; ++band) {
+            final FlameAccumulator.Builder builder = computeBand(band);
+            max = Math.max(max, builder.maxHitCount());
+            builder.release();
+        }
+
+        try (final NetpbmWriter writer = new NetpbmWriter(Paths.get(filename), NetpbmWriter.Format.PPM,
+                width, height, palette, background)) {
+            // The top band ends the first sweep and starts the second one, so it is written at once
+            final FlameAccumulator.Builder top = computeBand(bands - 1);
+            max = Math.max(max, top.maxHitCount());
+            writeBand(top, max, writer);
+
+            // Second sweep: writes the other bands from the top to the bottom
+            for (int band = bands - 2; band >= 0; --band) {
+                writeBand(computeBand(band), max, writer);
+            }
+        }
+
+        return passes(bands) * iterationsPerPass();
+    }
+
+    /**
+     * Runs the chaos algorithm keeping only the hits on the specified band
+     *
+     * @param band index of the band, zero being the bottom one
+     * @return the builder containing the hits of the band
+     */
+    private FlameAccumulator.Builder computeBand(final int band) {
+        final int firstRow = band * rowsPerBand;
+        final int rows = Math.min(rowsPerBand, height - firstRow);
+
+        final FlameAccumulator.Builder builder =
+                new FlameAccumulator.Builder(frame, width, height, firstRow, rows, 0, AccumulatorBufferPool.shared());
+        new ChaosGame(flame, seed).iterate(iterationsPerPass(), builder);
+
+        return builder;
+    }
+
+    /**
+     * Writes the rows of a band, from the top to the bottom one, and releases the band afterwards
+     *
+     * @param builder containing the hits of the band
+     * @param max     the highest hit count of the whole fractal
+     * @param writer  to write to
+     * @throws IOException if the file could not be written
+     */
+    private static void writeBand(final FlameAccumulator.Builder builder, final int max, final NetpbmWriter writer)
+            throws IOException {
+        // Hands the arrays over, so the band is not copied
+        final FlameAccumulator band = builder.buildInPlace(max);
+
+        try {
+            writer.write(band, Runtime.getRuntime().availableProcessors());
+        } finally {
+            band.release();
+        }
+    }
+}
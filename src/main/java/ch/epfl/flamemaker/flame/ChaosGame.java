@@ -0,0 +1,218 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.geometry2d.Point;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The chaos algorithm computing a {@code Flame}: starting at the origin, a randomly chosen
+ * {@code FlameTransformation} is applied to the current point over and over again and every
+ * resulting point is hit on a {@code HitAccumulator}.
+ * <p>
+ * The state of the algorithm (current point, color index and random number generator) is kept
+ * between calls of {@link #iterate(long, HitAccumulator)}, so a computation can be split into
+ * several steps which lead to exactly the same result as one single step
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class ChaosGame {
+
+    /**
+     * Amount of iterations done before hitting, to make sure the first hit point
+     * is not necessarily in the center
+     */
+    private static final int WARM_UP = 20;
+
+    /**
+     * The {@code FlameTransformations} of the fractal
+     */
+    private final FlameTransformation[] transformations;
+
+    /**
+     * The color index of every transformation
+     */
+    private final double[] colorIndexes;
+
+    /**
+     * Random number generator for choosing the transformation
+     */
+    private final Random random;
+
+    /**
+     * The current point
+     */
+    private Point point;
+
+    /**
+     * The current color index
+     */
+    private double colorIndex;
+
+    /**
+     * Amount of points hit so far
+     */
+    private long iterations = 0;
+
+    /**
+     * Creates a new {@code ChaosGame} for the specified {@code Flame}, whose transformations
+     * are chosen by a random number generator with the specified seed
+     *
+     * @param flame to compute
+     * @param seed  of the random number generator
+     */
+    public ChaosGame(final Flame flame, final long seed) {
+        this(flame, new Random(seed));
+    }
+
+    /**
+     * Creates a new {@code ChaosGame} for the specified {@code Flame}, whose transformations
+     * are chosen by the specified random number generator
+     *
+     * @param flame  to compute
+     * @param random number generator for choosing the transformations
+     */
+    public ChaosGame(final Flame flame, final Random random) {
+        this(flame, random, Point.ORIGIN, 0);
+
+        // The points of the first iterations are not hit
+        advance(WARM_UP, null);
+        iterations = 0;
+    }
+
+    /**
+     * Creates a new {@code ChaosGame} for the specified {@code Flame} continuing at the specified state
+     *
+     * @param flame      to compute
+     * @param random     number generator for choosing the transformations
+     * @param point      the current point
+     * @param colorIndex the current color index
+     */
+    private ChaosGame(final Flame flame, final Random random, final Point point, final double colorIndex) {
+        final List<FlameTransformation> list = flame.transformations();
+
+        this.transformations = list.toArray(new FlameTransformation[list.size()]);
+        this.colorIndexes = new double[transformations.length];
+        this.random = random;
+        this.point = point;
+        this.colorIndex = colorIndex;
+
+        for (int i = 0; i < transformations.length; ++i) {
+            // Computes the values and saves them for not computing the same values over and over
+            colorIndexes[i] = Color.colorIndex(i);
+        }
+    }
+
+    /**
+     * Continues the computation for the specified amount of points, which are hit
+     * on the specified {@code HitAccumulator}
+     *
+     * @param amount      of points to compute
+     * @param accumulator to hit the points on
+     */
+    public void iterate(final long amount, final HitAccumulator accumulator) {
+        advance(amount, accumulator);
+    }
+
+    /**
+     * @return the amount of points hit so far
+     */
+    public long iterations() {
+        return iterations;
+    }
+
+    /**
+     * Writes the state of the {@code ChaosGame} (but not the {@code Flame}), so it can be
+     * continued later on using {@link #readState(Flame, DataInput)}
+     *
+     * @param out to write to
+     * @throws IOException if the state could not be written
+     */
+    void writeState(final DataOutput out) throws IOException {
+        // java.util.Random does not expose its state, but it is serializable
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream objectStream = new ObjectOutputStream(bytes)) {
+            objectStream.writeObject(random);
+        }
+
+        out.writeDouble(point.x());
+        out.writeDouble(point.y());
+        out.writeDouble(colorIndex);
+        out.writeLong(iterations);
+        out.writeInt(bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    /**
+     * Reads the state of a {@code ChaosGame} written by {@link #writeState(DataOutput)}
+     *
+     * @param flame computed by the {@code ChaosGame}
+     * @param in    to read from
+     * @return a {@code ChaosGame} continuing exactly where the written one stopped
+     * @throws IOException if the state could not be read or is invalid
+     */
+    static ChaosGame readState(final Flame flame, final DataInput in) throws IOException {
+        final Point point = new Point(in.readDouble(), in.readDouble());
+        final double colorIndex = in.readDouble();
+        final long iterations = in.readLong();
+
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        final Random random;
+        try (final ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            random = (Random) objectStream.readObject();
+        } catch (final ClassNotFoundException | ClassCastException exception) {
+            throw new IOException("Invalid random number generator state", exception);
+        }
+
+        final ChaosGame game = new ChaosGame(flame, random, point, colorIndex);
+        game.iterations = iterations;
+        return game;
+    }
+
+    /**
+     * Applies the specified amount of randomly chosen transformations
+     *
+     * @param amount      of transformations to apply
+     * @param accumulator to hit the points on, {@code null} if they should not be hit
+     */
+    private void advance(final long amount, final HitAccumulator accumulator) {
+        // Nothing to compute if there aren't any transformations
+        if (transformations.length == 0) {
+            return;
+        }
+
+        Point p = point;
+        double c = colorIndex;
+
+        for (long i = 0; i < amount; ++i) {
+            final int rand = random.nextInt(transformations.length);
+
+            // Transforms the point with the flame transformation
+            p = transformations[rand].transformPoint(p);
+
+            // Calculates the color for this point using the last color and the color index for this transformation
+            c = (c + colorIndexes[rand]) * 0.5;
+
+            // Hits the point on the accumulator
+            if (accumulator != null) {
+                accumulator.hit(p, c);
+            }
+        }
+
+        point = p;
+        colorIndex = c;
+        iterations += amount;
+    }
+}
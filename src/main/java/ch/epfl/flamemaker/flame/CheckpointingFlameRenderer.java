@@ -0,0 +1,401 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a {@code Flame} with the seeded chaos algorithm, periodically saving a checkpoint
+ * (the fields computed so far, the state of the chaos algorithm and the amount of iterations)
+ * to a file. A render which was interrupted can be continued from its last checkpoint using
+ * {@link #resume(Path)} and leads to exactly the same {@code FlameAccumulator} as an
+ * uninterrupted render, which is the same as {@link Flame#compute(Rectangle, int, int, int, long)}.
+ * <p>
+ * Only a copy of the fields is taken while the computation is paused, the copy is written
+ * to the file in the background while the computation continues
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class CheckpointingFlameRenderer {
+
+    /**
+     * First bytes of a checkpoint file ("FLCP")
+     */
+    private static final int MAGIC = 0x464C4350;
+
+    /**
+     * Version of the checkpoint file format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the buffer used for writing and reading the fields
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The {@code Flame} to render
+     */
+    private final Flame flame;
+
+    /**
+     * {@code Rectangle} limiting the area
+     */
+    private final Rectangle frame;
+
+    /**
+     * Width of the accumulator
+     */
+    private final int width;
+
+    /**
+     * Height of the accumulator
+     */
+    private final int height;
+
+    /**
+     * Amount of iterations of the whole render
+     */
+    private final long totalIterations;
+
+    /**
+     * File the checkpoints are written to
+     */
+    private final Path checkpoint;
+
+    /**
+     * Amount of iterations between two checkpoints
+     */
+    private final long interval;
+
+    /**
+     * The chaos algorithm computing the {@code Flame}
+     */
+    private final ChaosGame game;
+
+    /**
+     * Builder containing the fields computed so far
+     */
+    private final FlameAccumulator.Builder builder;
+
+    /**
+     * Creates a new {@code CheckpointingFlameRenderer}
+     *
+     * @param flame      to render
+     * @param frame      limiting the area
+     * @param width      of the accumulator
+     * @param height     of the accumulator
+     * @param density    : iterations per field
+     * @param seed       of the random number generator
+     * @param checkpoint file to write the checkpoints to
+     * @param interval   amount of iterations between two checkpoints
+     * @throws java.lang.IllegalArgumentException if the width or the height or the interval are
+     *                                            not greater than zero
+     */
+    public CheckpointingFlameRenderer(final Flame flame, final Rectangle frame, final int width, final int height,
+                                      final int density, final long seed, final Path checkpoint, final long interval) {
+        this(flame, frame, width, height, (long) density * width * height, checkpoint, interval,
+                new ChaosGame(flame, seed), new FlameAccumulator.Builder(frame, width, height));
+    }
+
+    /**
+     * Creates a new {@code CheckpointingFlameRenderer} continuing at the specified state
+     *
+     * @param flame           to render
+     * @param frame           limiting the area
+     * @param width           of the accumulator
+     * @param height          of the accumulator
+     * @param totalIterations amount of iterations of the whole render
+     * @param checkpoint      file to write the checkpoints to
+     * @param interval        amount of iterations between two checkpoints
+     * @param game            the chaos algorithm computing the {@code Flame}
+     * @param builder         containing the fields computed so far
+     */
+    private CheckpointingFlameRenderer(final Flame flame, final Rectangle frame, final int width, final int height,
+                                       final long totalIterations, final Path checkpoint, final long interval,
+                                       final ChaosGame game, final FlameAccumulator.Builder builder) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than zero");
+        }
+
+        this.flame = flame;
+        this.frame = frame;
+        this.width = width;
+        this.height = height;
+        this.totalIterations = totalIterations;
+        this.checkpoint = checkpoint;
+        this.interval = interval;
+        this.game = game;
+        this.builder = builder;
+    }
+
+    /**
+     * Creates a {@code CheckpointingFlameRenderer} continuing the render saved in the specified checkpoint
+     *
+     * @param checkpoint file written by an interrupted render
+     * @return the {@code CheckpointingFlameRenderer} continuing the render, which writes its
+     * checkpoints to the same file
+     * @throws IOException if the checkpoint could not be read or is invalid
+     */
+    public static CheckpointingFlameRenderer resume(final Path checkpoint) throws IOException {
+        try (final FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+            // The header is read unbuffered, so the channel is positioned right after it
+            final DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + checkpoint);
+            }
+
+            final Flame flame = FlameCodec.readFlame(in);
+            final Rectangle frame = FlameCodec.readRectangle(in);
+            final int width = in.readInt();
+            final int height = in.readInt();
+            final long totalIterations = in.readLong();
+            final long interval = in.readLong();
+            final ChaosGame game = ChaosGame.readState(flame, in);
+
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException("Invalid dimensions in checkpoint file: " + checkpoint);
+            }
+
+            final AccumulatorBufferPool pool = AccumulatorBufferPool.shared();
+            final int[] hitCount = pool.takeInts(width * height);
+            final double[] colorIndexSum = pool.takeDoubles(width * height);
+            readFields(channel, hitCount, colorIndexSum, width * height);
+
+            // Merging into an empty builder restores exactly the saved fields
+            final FlameAccumulator saved = new FlameAccumulator(width, height, hitCount, colorIndexSum, -1, pool);
+            final FlameAccumulator.Builder builder = new FlameAccumulator.Builder(frame, width, height);
+            builder.merge(saved);
+            saved.release();
+
+            return new CheckpointingFlameRenderer(flame, frame, width, height, totalIterations, checkpoint,
+                    interval, game, builder);
+        }
+    }
+
+    /**
+     * @return the amount of iterations computed so far
+     */
+    public long iterations() {
+        return game.iterations();
+    }
+
+    /**
+     * @return the amount of iterations of the whole render
+     */
+    public long totalIterations() {
+        return totalIterations;
+    }
+
+    /**
+     * Computes the remaining iterations, writing a checkpoint after every interval.
+     * The checkpoint file is deleted once the render is complete and the
+     * renderer must not be used anymore
+     *
+     * @return {@code FlameAccumulator} containing the rendered fractal
+     * @throws IOException if a checkpoint could not be written
+     */
+    public FlameAccumulator render() throws IOException {
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        Future<?> pending = null;
+
+        try {
+            while (game.iterations() < totalIterations) {
+                game.iterate(Math.min(interval, totalIterations - game.iterations()), builder);
+
+                if (game.iterations() < totalIterations) {
+                    // At most one checkpoint is written at a time
+                    await(pending);
+                    pending = writer.submit(checkpointTask());
+                }
+            }
+
+            await(pending);
+        } finally {
+            writer.shutdown();
+        }
+
+        Files.deleteIfExists(checkpoint);
+
+        final FlameAccumulator accumulator = builder.build();
+        builder.release();
+
+        return accumulator;
+    }
+
+    /**
+     * Takes a snapshot of the current state and returns a task writing it to the checkpoint file.
+     * The file is replaced atomically, so there is always a complete checkpoint
+     *
+     * @return the task writing the checkpoint
+     * @throws IOException if the state could not be serialized
+     */
+    private Callable<Void> checkpointTask() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            FlameCodec.writeFlame(out, flame);
+            FlameCodec.writeRectangle(out, frame);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeLong(totalIterations);
+            out.writeLong(interval);
+            game.writeState(out);
+        }
+
+        // Copying the fields is the only part pausing the computation
+        final byte[] header = bytes.toByteArray();
+        final FlameAccumulator snapshot = builder.build();
+
+        return () -> {
+            final Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+
+            try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(channel, ByteBuffer.wrap(header));
+                writeFields(channel, snapshot.hitCounts(), snapshot.colorIndexSums(), width * height);
+                channel.force(false);
+            } finally {
+                snapshot.release();
+            }
+
+            Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        };
+    }
+
+    /**
+     * Waits until the specified checkpoint was written
+     *
+     * @param pending the task writing the checkpoint, may be {@code null}
+     * @throws IOException if the checkpoint could not be written
+     */
+    private static void await(final Future<?> pending) throws IOException {
+        if (pending == null) {
+            return;
+        }
+
+        try {
+            pending.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing checkpoint", exception);
+        } catch (final ExecutionException exception) {
+            throw new IOException("Could not write checkpoint", exception.getCause());
+        }
+    }
+
+    /**
+     * Writes the hit counts followed by the color index sums in bulk
+     *
+     * @param channel       to write to
+     * @param hitCount      of the fields
+     * @param colorIndexSum of the fields
+     * @param size          amount of fields
+     * @throws IOException if the fields could not be written
+     */
+    private static void writeFields(final FileChannel channel, final int[] hitCount, final double[] colorIndexSum,
+                                    final int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        for (int offset = 0; offset < size; ) {
+            final int length = Math.min(size - offset, BUFFER_SIZE / Integer.BYTES);
+            buffer.clear();
+            buffer.asIntBuffer().put(hitCount, offset, length);
+            buffer.limit(length * Integer.BYTES);
+            writeFully(channel, buffer);
+            offset += length;
+        }
+
+        for (int offset = 0; offset < size; ) {
+            final int length = Math.min(size - offset, BUFFER_SIZE / Double.BYTES);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(colorIndexSum, offset, length);
+            buffer.limit(length * Double.BYTES);
+            writeFully(channel, buffer);
+            offset += length;
+        }
+    }
+
+    /**
+     * Reads the hit counts followed by the color index sums in bulk
+     *
+     * @param channel       to read from
+     * @param hitCount      to fill
+     * @param colorIndexSum to fill
+     * @param size          amount of fields
+     * @throws IOException if the fields could not be read
+     */
+    private static void readFields(final FileChannel channel, final int[] hitCount, final double[] colorIndexSum,
+                                   final int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        for (int offset = 0; offset < size; ) {
+            final int length = Math.min(size - offset, BUFFER_SIZE / Integer.BYTES);
+            readFully(channel, buffer, length * Integer.BYTES);
+            buffer.asIntBuffer().get(hitCount, offset, length);
+            offset += length;
+        }
+
+        for (int offset = 0; offset < size; ) {
+            final int length = Math.min(size - offset, BUFFER_SIZE / Double.BYTES);
+            readFully(channel, buffer, length * Double.BYTES);
+            buffer.asDoubleBuffer().get(colorIndexSum, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer
+     *
+     * @param channel to write to
+     * @param buffer  to write
+     * @throws IOException if the bytes could not be written
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads exactly the specified amount of bytes into the buffer, which is then flipped
+     *
+     * @param channel to read from
+     * @param buffer  to read into
+     * @param length  amount of bytes to read
+     * @throws IOException if the bytes could not be read
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final int length)
+            throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of checkpoint file");
+            }
+        }
+
+        buffer.flip();
+    }
+}
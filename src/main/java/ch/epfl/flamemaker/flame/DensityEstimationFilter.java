@@ -0,0 +1,300 @@
+package ch.epfl.flamemaker.flame;
+
+import java.util.stream.IntStream;
+
+/**
+ * Density estimation as done by flam3: every field of a {@code FlameAccumulator} is spread over
+ * its neighbourhood with a Gaussian kernel whose radius shrinks as the hit count of the field grows,
+ * {@code maxRadius / hits^curve} (but at least {@code minRadius}). Sparse areas, where the few hits
+ * look like noise, are smoothed strongly, while dense areas keep their details, so far fewer
+ * iterations are needed before the noise disappears.
+ * <p>
+ * The kernels are computed once for radii rounded to an eighth of a field. The fields are spread
+ * in parallel, band by band: the bands are at least twice as high as the largest kernel radius, so
+ * the bands with even indexes can be spread at the same time without touching the same fields,
+ * followed by the ones with odd indexes. The result does not depend on the amount of threads.
+ * <p>
+ * As the filtered fields contain fractions of hits, the resulting {@code FlameAccumulator} stores
+ * them as fixed-point numbers, so it cannot be merged into a {@code FlameAccumulator.Builder}
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class DensityEstimationFilter {
+
+    /**
+     * The filter with a maximal radius of 4, a minimal radius of 0 and a curve of 0.6. The defaults
+     * of flam3 (9, 0 and 0.4) are meant for supersampled hit counts and blur the fields of a
+     * {@code FlameAccumulator} too much
+     */
+    public static final DensityEstimationFilter DEFAULT = new DensityEstimationFilter(4, 0, 0.6);
+
+    /**
+     * Amount of kernels per field of radius
+     */
+    private static final int STEPS = 8;
+
+    /**
+     * Hit counts below this bound get their kernel from a table instead of computing the radius
+     */
+    private static final int TABLE_SIZE = 1 << 12;
+
+    /**
+     * Highest amount a single hit counts in the filtered accumulator
+     */
+    private static final int MAX_COUNT_SCALE = 1 << 8;
+
+    /**
+     * Minimal height of a band
+     */
+    private static final int MIN_BAND_HEIGHT = 32;
+
+    /**
+     * Radius of the kernel of a field hit once
+     */
+    private final double maxRadius;
+
+    /**
+     * Smallest radius of a kernel
+     */
+    private final double minRadius;
+
+    /**
+     * How fast the radius shrinks with the hit count
+     */
+    private final double curve;
+
+    /**
+     * The weights of every kernel, row by row, the kernel with index {@code i} having a
+     * radius of {@code i / STEPS}
+     */
+    private final float[][] kernels;
+
+    /**
+     * Amount of fields every kernel reaches in each direction
+     */
+    private final int[] extents;
+
+    /**
+     * Index of the kernel of every hit count below {@link #TABLE_SIZE}
+     */
+    private final int[] kernelOfCount;
+
+    /**
+     * Creates a new {@code DensityEstimationFilter}
+     *
+     * @param maxRadius radius of the kernel of a field hit once
+     * @param minRadius smallest radius of a kernel
+     * @param curve     how fast the radius shrinks with the hit count
+     * @throws java.lang.IllegalArgumentException if a radius or the curve is negative or if the
+     *                                            minimal radius is greater than the maximal one
+     */
+    public DensityEstimationFilter(final double maxRadius, final double minRadius, final double curve) {
+        if (!(minRadius >= 0 && maxRadius >= minRadius && curve >= 0)) {
+            throw new IllegalArgumentException("Radii and curve must not be negative, "
+                    + "the minimal radius must not be greater than the maximal one");
+        }
+
+        this.maxRadius = maxRadius;
+        this.minRadius = minRadius;
+        this.curve = curve;
+
+        // Precomputes the kernels for all the rounded radii
+        final int count = (int) Math.round(maxRadius * STEPS) + 1;
+        kernels = new float[count][];
+        extents = new int[count];
+        for (int i = 0; i < count; ++i) {
+            extents[i] = extent((double) i / STEPS);
+            kernels[i] = kernel((double) i / STEPS, extents[i]);
+        }
+
+        kernelOfCount = new int[TABLE_SIZE];
+        for (int hits = 1; hits < TABLE_SIZE; ++hits) {
+            kernelOfCount[hits] = kernelIndex(hits);
+        }
+    }
+
+    /**
+     * Filters the specified {@code FlameAccumulator}, which stays unchanged
+     *
+     * @param accumulator to filter
+     * @return the filtered {@code FlameAccumulator}, whose intensities are relative to its own highest hit count
+     */
+    public FlameAccumulator apply(final FlameAccumulator accumulator) {
+        final int width = accumulator.width();
+        final int height = accumulator.height();
+        final int size = width * height;
+        final AccumulatorBufferPool pool = AccumulatorBufferPool.shared();
+
+        final double[] density = pool.takeDoubles(size);
+        final double[] colorSum = pool.takeDoubles(size);
+
+        // Bands with the same parity never spread onto the same fields
+        final int bandHeight = Math.max(MIN_BAND_HEIGHT, 2 * extents[extents.length - 1]);
+        final int bands = (height - 1) / bandHeight + 1;
+        for (int p = 0; p < 2; ++p) {
+            final int parity = p;
+            IntStream.range(0, bands).filter(band -> band % 2 == parity).parallel().forEach(band -> {
+                final int firstRow = band * bandHeight;
+                spread(accumulator, firstRow, Math.min(height, firstRow + bandHeight), density, colorSum);
+            });
+        }
+
+        final FlameAccumulator filtered = toAccumulator(width, height, density, colorSum, pool);
+
+        pool.release(density);
+        pool.release(colorSum);
+
+        return filtered;
+    }
+
+    /**
+     * Spreads the fields of the specified rows over their neighbourhoods
+     *
+     * @param accumulator to filter
+     * @param firstRow    first row to spread
+     * @param endRow      row after the last row to spread
+     * @param density     the filtered hit counts
+     * @param colorSum    the filtered color index sums
+     */
+    private void spread(final FlameAccumulator accumulator, final int firstRow, final int endRow,
+                        final double[] density, final double[] colorSum) {
+        final int width = accumulator.width();
+        final int height = accumulator.height();
+        final int[] hitCount = accumulator.hitCounts();
+        final double[] colorIndexSum = accumulator.colorIndexSums();
+        final double scale = accumulator.countScale();
+
+        for (int y = firstRow; y < endRow; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int index = y * width + x;
+                if (hitCount[index] == 0) {
+                    continue;
+                }
+
+                final double hits = hitCount[index] / scale;
+                final double colors = colorIndexSum[index] / scale;
+                final int kernelIndex = (hitCount[index] < TABLE_SIZE && scale == 1)
+                        ? kernelOfCount[hitCount[index]]
+                        : kernelIndex(hits);
+                final int extent = extents[kernelIndex];
+
+                // Dense fields are not spread at all
+                if (extent == 0) {
+                    density[index] += hits;
+                    colorSum[index] += colors;
+                    continue;
+                }
+
+                final float[] kernel = kernels[kernelIndex];
+                final int side = 2 * extent + 1;
+                final int top = Math.min(height - 1, y + extent);
+                final int right = Math.min(width - 1, x + extent);
+
+                for (int j = Math.max(0, y - extent); j <= top; ++j) {
+                    final int kernelRow = (j - y + extent) * side - x + extent;
+                    final int row = j * width;
+
+                    for (int i = Math.max(0, x - extent); i <= right; ++i) {
+                        final float weight = kernel[kernelRow + i];
+                        density[row + i] += weight * hits;
+                        colorSum[row + i] += weight * colors;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param hits of a field (may be fractional)
+     * @return the index of the kernel of a field hit the specified amount of times
+     */
+    private int kernelIndex(final double hits) {
+        final double radius = Math.max(minRadius, maxRadius / Math.pow(hits, curve));
+
+        return (int) Math.min(Math.round(radius * STEPS), kernels.length - 1);
+    }
+
+    /**
+     * @param radius of a kernel
+     * @return the amount of fields the kernel reaches in each direction,
+     * zero if it does not reach beyond its own field
+     */
+    private static int extent(final double radius) {
+        return (radius < 0.5) ? 0 : (int) Math.ceil(radius);
+    }
+
+    /**
+     * Computes a Gaussian kernel (standard deviation of half the radius) cut off at the radius
+     *
+     * @param radius of the kernel
+     * @param extent amount of fields the kernel reaches in each direction
+     * @return the weights of the kernel row by row, summing up to one
+     */
+    private static float[] kernel(final double radius, final int extent) {
+        final int side = 2 * extent + 1;
+        final double[] weights = new double[side * side];
+        final double sigma = radius / 2;
+        double sum = 0;
+
+        for (int j = -extent; j <= extent; ++j) {
+            for (int i = -extent; i <= extent; ++i) {
+                final double distanceSquared = i * i + j * j;
+
+                if (extent == 0 || distanceSquared <= radius * radius) {
+                    final double weight = (extent == 0) ? 1 : Math.exp(-distanceSquared / (2 * sigma * sigma));
+                    weights[(j + extent) * side + i + extent] = weight;
+                    sum += weight;
+                }
+            }
+        }
+
+        final float[] kernel = new float[weights.length];
+        for (int i = 0; i < weights.length; ++i) {
+            kernel[i] = (float) (weights[i] / sum);
+        }
+
+        return kernel;
+    }
+
+    /**
+     * Converts the filtered fields to fixed-point numbers, choosing the highest scale
+     * (up to {@link #MAX_COUNT_SCALE}) which does not overflow
+     *
+     * @param width    of the accumulator
+     * @param height   of the accumulator
+     * @param density  the filtered hit counts
+     * @param colorSum the filtered color index sums
+     * @param pool     to take the arrays from
+     * @return the filtered {@code FlameAccumulator}
+     */
+    private static FlameAccumulator toAccumulator(final int width, final int height, final double[] density,
+                                                  final double[] colorSum, final AccumulatorBufferPool pool) {
+        final int size = width * height;
+
+        double max = 0;
+        for (int i = 0; i < size; ++i) {
+            max = Math.max(max, density[i]);
+        }
+
+        final int scale = Math.max(1, Math.min(MAX_COUNT_SCALE,
+                Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE, Integer.MAX_VALUE / (max + 1)))));
+
+        final int[] hitCount = pool.takeInts(size);
+        final double[] colorIndexSum = pool.takeDoubles(size);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int i = y * width; i < (y + 1) * width; ++i) {
+                final int count = (int) Math.round(density[i] * scale);
+
+                // Keeps the average color index of the field
+                if (count > 0) {
+                    hitCount[i] = count;
+                    colorIndexSum[i] = colorSum[i] * count / density[i];
+                }
+            }
+        });
+
+        return new FlameAccumulator(width, height, hitCount, colorIndexSum, -1, pool, scale);
+    }
+}
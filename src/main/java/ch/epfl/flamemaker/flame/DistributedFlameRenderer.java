@@ -0,0 +1,336 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a {@code Flame} on several worker processes: the iterations of a seeded render are
+ * divided into shards, every shard being computed with its own seed derived from the seed of the
+ * render. The shards are handed out to the {@link FlameWorker} processes over their standard
+ * input as soon as they are idle, the partial {@code FlameAccumulators} come back over their
+ * standard output as {@link FlameHistogram}s.
+ * <p>
+ * The partial results are summed up in the order of the shards (not in the order they arrive),
+ * so a render leads to exactly the same {@code FlameAccumulator} no matter how many workers were
+ * used, which is the same as {@link #renderLocally()}. A render with a single shard is the same
+ * as {@link Flame#compute(Rectangle, int, int, int, long)}.
+ * <p>
+ * The workers are started on the local host by default, but any command starting a worker
+ * (e.g. through ssh on another host) can be used
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class DistributedFlameRenderer {
+
+    /**
+     * Odd constant (fractional part of the golden ratio) used for deriving the seeds of the shards
+     */
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The {@code Flame} to render
+     */
+    private final Flame flame;
+
+    /**
+     * {@code Rectangle} limiting the area
+     */
+    private final Rectangle frame;
+
+    /**
+     * Width of the accumulator
+     */
+    private final int width;
+
+    /**
+     * Height of the accumulator
+     */
+    private final int height;
+
+    /**
+     * Amount of iterations of the whole render
+     */
+    private final long totalIterations;
+
+    /**
+     * Seed of the render
+     */
+    private final long seed;
+
+    /**
+     * Amount of shards
+     */
+    private final int shards;
+
+    /**
+     * Creates a new {@code DistributedFlameRenderer}
+     *
+     * @param flame   to render
+     * @param frame   limiting the area
+     * @param width   of the accumulator
+     * @param height  of the accumulator
+     * @param density : iterations per field
+     * @param seed    of the render
+     * @param shards  amount of shards to divide the iterations into
+     * @throws java.lang.IllegalArgumentException if the width, the height or the amount of shards
+     *                                            are not greater than zero
+     */
+    public DistributedFlameRenderer(final Flame flame, final Rectangle frame, final int width, final int height,
+                                    final int density, final long seed, final int shards) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be greater than zero");
+        }
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Amount of shards must be greater than zero");
+        }
+
+        this.flame = flame;
+        this.frame = frame;
+        this.width = width;
+        this.height = height;
+        this.totalIterations = (long) density * width * height;
+        this.seed = seed;
+        this.shards = shards;
+    }
+
+    /**
+     * @return the command starting a worker on the local host, using the same Java
+     * runtime and class path as this process
+     */
+    public static List<String> localWorkerCommand() {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        return Arrays.asList(java, "-cp", System.getProperty("java.class.path"), FlameWorker.class.getName());
+    }
+
+    /**
+     * Renders the {@code Flame} on the specified amount of workers started on the local host
+     *
+     * @param workers amount of worker processes
+     * @return {@code FlameAccumulator} containing the rendered {@code Flame}
+     * @throws IOException if a worker could not be started or failed
+     * @throws java.lang.IllegalArgumentException if the amount of workers is not greater than zero
+     */
+    public FlameAccumulator render(final int workers) throws IOException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Amount of workers must be greater than zero");
+        }
+
+        return render(Collections.nCopies(workers, localWorkerCommand()));
+    }
+
+    /**
+     * Renders the {@code Flame} on workers started by the specified commands, one worker per command
+     *
+     * @param commands starting the workers
+     * @return {@code FlameAccumulator} containing the rendered {@code Flame}
+     * @throws IOException if a worker could not be started or failed
+     * @throws java.lang.IllegalArgumentException if there are no commands
+     */
+    public FlameAccumulator render(final List<List<String>> commands) throws IOException {
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+
+        final Merger merger = new Merger();
+        final AtomicInteger nextShard = new AtomicInteger();
+        final List<Process> processes = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(commands.size());
+
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (final List<String> command : commands) {
+                final Process process = new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                processes.add(process);
+
+                futures.add(executor.submit(() -> {
+                    serve(process, nextShard, merger);
+                    return null;
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+
+            // Stops all the workers if one of them failed
+            processes.forEach(Process::destroy);
+        }
+
+        return merger.result();
+    }
+
+    /**
+     * Computes all the shards in this process, leading to the same {@code FlameAccumulator}
+     * as a render on worker processes
+     *
+     * @return {@code FlameAccumulator} containing the rendered {@code Flame}
+     */
+    public FlameAccumulator renderLocally() {
+        final Merger merger = new Merger();
+
+        for (int shard = 0; shard < shards; ++shard) {
+            merger.add(shard, FlameWorker.computeShard(flame, frame, width, height,
+                    shardSeed(shard), shardIterations(shard)));
+        }
+
+        return merger.result();
+    }
+
+    /**
+     * @param shard index of the shard
+     * @return the seed of the random number generator of the specified shard, the first shard
+     * using the seed of the render itself
+     */
+    private long shardSeed(final int shard) {
+        return seed + shard * SEED_INCREMENT;
+    }
+
+    /**
+     * @param shard index of the shard
+     * @return the amount of iterations of the specified shard, the remainder being
+     * divided among the first shards
+     */
+    private long shardIterations(final int shard) {
+        return totalIterations / shards + ((shard < totalIterations % shards) ? 1 : 0);
+    }
+
+    /**
+     * Hands out shards to a worker until there are none left
+     *
+     * @param process   of the worker
+     * @param nextShard index of the next shard to hand out
+     * @param merger    collecting the results
+     * @throws IOException if the communication with the worker failed or the worker failed
+     * @throws InterruptedException if interrupted while waiting for the worker to exit
+     */
+    private void serve(final Process process, final AtomicInteger nextShard, final Merger merger)
+            throws IOException, InterruptedException {
+        // The standard input is no resource, it is closed explicitly to tell the worker to exit (and by
+        // destroying the process on failure)
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+
+        try (final InputStream in = new BufferedInputStream(process.getInputStream(), 1 << 16)) {
+            FlameCodec.writeFlame(out, flame);
+            FlameCodec.writeRectangle(out, frame);
+            out.writeInt(width);
+            out.writeInt(height);
+
+            int shard;
+            while ((shard = nextShard.getAndIncrement()) < shards) {
+                out.writeLong(shardSeed(shard));
+                out.writeLong(shardIterations(shard));
+                out.flush();
+
+                final FlameAccumulator partial = FlameHistogram.read(in).accumulator();
+                if (partial.width() != width || partial.height() != height) {
+                    throw new IOException("Worker returned a histogram with invalid dimensions");
+                }
+
+                merger.add(shard, partial);
+            }
+
+            // Closing the standard input tells the worker to exit
+            out.close();
+
+            if (process.waitFor() != 0) {
+                throw new IOException("Worker exited with " + process.exitValue());
+            }
+        }
+    }
+
+    /**
+     * Waits until the specified worker is done
+     *
+     * @param future of the task serving the worker
+     * @throws IOException if the worker failed
+     */
+    private static void await(final Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for worker", exception);
+        } catch (final ExecutionException exception) {
+            throw new IOException("Worker failed", exception.getCause());
+        }
+    }
+
+    /**
+     * Sums up the partial results in the order of the shards, keeping only the
+     * results which arrived before the ones of a preceding shard
+     *
+     * @author Groux Marcel Jean Jacques	227630
+     * @author Platzer Casimir Benjamin		228352
+     * @version 1.0
+     */
+    private final class Merger {
+
+        /**
+         * Builder containing the sum of the merged results
+         */
+        private final FlameAccumulator.Builder builder = new FlameAccumulator.Builder(frame, width, height);
+
+        /**
+         * Results waiting for the results of preceding shards
+         */
+        private final FlameAccumulator[] pending = new FlameAccumulator[shards];
+
+        /**
+         * Index of the next shard to merge
+         */
+        private int next = 0;
+
+        /**
+         * Adds the result of a shard and merges all results which are ready
+         *
+         * @param shard   index of the shard
+         * @param partial result of the shard
+         */
+        synchronized void add(final int shard, final FlameAccumulator partial) {
+            pending[shard] = partial;
+
+            while (next < shards && pending[next] != null) {
+                builder.merge(pending[next]);
+                pending[next].release();
+                pending[next++] = null;
+            }
+        }
+
+        /**
+         * @return the sum of all the results
+         * @throws java.lang.IllegalStateException if a result is missing
+         */
+        synchronized FlameAccumulator result() {
+            if (next < shards) {
+                throw new IllegalStateException("Result of shard " + next + " is missing");
+            }
+
+            final FlameAccumulator accumulator = builder.build();
+            builder.release();
+
+            return accumulator;
+        }
+    }
+}
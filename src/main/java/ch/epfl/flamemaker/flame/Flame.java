@@ -1,12 +1,11 @@
 package ch.epfl.flamemaker.flame;
 
-import ch.epfl.flamemaker.color.Color;
 import ch.epfl.flamemaker.geometry2d.AffineTransformation;
-import ch.epfl.flamemaker.geometry2d.Point;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
@@ -147,116 +146,71 @@ public final class Flame {
      * @see FlameAccumulator
      */
     public FlameAccumulator compute(final Rectangle frame, final int width, final int height, final int density) {
-        // Fields for points, colors and random values with their starting values
-        Point p = Point.ORIGIN;
-        double colorIndex = 0;
-        int rand;
-
-        final int size = transformations.size();
-
-        // Random number generator for choosing the transformation
-        final Random r = new Random();
-
-        // Number of iterations to perform
-        final int m = density * height * width;
-
-        // Contains the values for some quite slow method
-        final double[] indexes = new double[size];
-
-        // Builder to create the flame accumulator
-        final FlameAccumulator.Builder builder = new FlameAccumulator.Builder(frame, width, height);
-
-        // Returns the empty builder if there aren't any transformations
-        if (size == 0) {
-            return builder.build();
-        }
-
-        for (int i = 0; i < size; ++i) {
-            // Computes the values and saves them for not computing the same values over and over
-            indexes[i] = Color.colorIndex(i);
-        }
-
-        // First twenty iterations to make sure first point hitting is not necessarily in the center
-        for (int i = 0; i < 20; ++i) {
-            rand = r.nextInt(size);
-
-            // Transforms the point with the flame transformation
-            p = transformations.get(rand).transformPoint(p);
-
-            // Calculates the color for this point using the last color and the color index for this transformation
-            colorIndex = (colorIndex + indexes[rand]) * 0.5;
-        }
-
-        for (int i = 0; i < m; ++i) {
-            rand = r.nextInt(size);
-
-            p = transformations.get(rand).transformPoint(p);
-
-            colorIndex = (colorIndex + indexes[rand]) * 0.5;
-
-            // Hits the point on the accumulator
-            builder.hit(p, colorIndex);
-        }
+        return compute(frame, width, height, density, new Random());
+    }
 
-        // Builds the flame accumulator and returns it
-        return builder.build();
+    /**
+     * Computes the fractal like {@link #compute(Rectangle, int, int, int)}, but the transformations
+     * are chosen by a random number generator with the specified seed. Computing the fractal twice
+     * with the same seed leads to exactly the same {@code FlameAccumulator}
+     *
+     * @param frame   limiting the area
+     * @param width   of the accumulator
+     * @param height  of the {@code FlameAccumulator}
+     * @param density : iterations per field
+     * @param seed    of the random number generator
+     * @return {@code FlameAccumulator} with specified width and height containing the specified fractal
+     * @see FlameAccumulator
+     */
+    public FlameAccumulator compute(final Rectangle frame, final int width, final int height, final int density,
+                                    final long seed) {
+        return compute(frame, width, height, density, new Random(seed));
     }
 
     /**
      * Computes the fractal until the given amount of {@code points} were computer
      *
      * @param amount  of {@code Points} to calculate
-     * @param builder {@code FlameAccumulator.Builder} if existent to continue calculating
-     * @return
+     * @param builder {@code FlameAccumulator.Builder} (or any other {@code HitAccumulator})
+     *                if existent to continue calculating
+     * @param <B>     type of the builder
+     * @return the specified builder
      */
-    public FlameAccumulator.Builder compute(final int amount, final FlameAccumulator.Builder builder) {
-        // Fields for points, colors and random values with their starting values
-        Point p = Point.ORIGIN;
-        double colorIndex = 0;
-        int rand;
-
-        final int size = transformations.size();
-
-        // Random number generator for choosing the transformation
-        final Random r = new Random();
-
-        // Contains the values for some quite slow method
-        final double[] indexes = new double[size];
-
-        // Returns the empty builder if there aren't any transformations
-        if (size == 0) {
-            return builder;
-        }
-
-        for (int i = 0; i < size; ++i) {
-            // Computes the values and saves them for not computing the same values over and over
-            indexes[i] = Color.colorIndex(i);
-        }
-
-        // First twenty iterations to make sure first point hitting is not necessarily in the center
-        for (int i = 0; i < 20; ++i) {
-            rand = r.nextInt(size);
+    public <B extends HitAccumulator> B compute(final long amount, final B builder) {
+        new ChaosGame(this, new Random()).iterate(amount, builder);
 
-            // Transforms the point with the flame transformation
-            p = transformations.get(rand).transformPoint(p);
-
-            // Calculates the color for this point using the last color and the color index for this transformation
-            colorIndex = (colorIndex + indexes[rand]) * 0.5;
-        }
+        return builder;
+    }
 
-        for (int i = 0; i < amount; ++i) {
-            rand = r.nextInt(size);
+    /**
+     * @return the {@code FlameTransformations} of the fractal
+     */
+    List<FlameTransformation> transformations() {
+        return Collections.unmodifiableList(transformations);
+    }
 
-            p = transformations.get(rand).transformPoint(p);
+    /**
+     * Computes the fractal using the specified random number generator
+     *
+     * @param frame   limiting the area
+     * @param width   of the accumulator
+     * @param height  of the {@code FlameAccumulator}
+     * @param density : iterations per field
+     * @param random  number generator for choosing the transformations
+     * @return {@code FlameAccumulator} with specified width and height containing the specified fractal
+     */
+    private FlameAccumulator compute(final Rectangle frame, final int width, final int height, final int density,
+                                     final Random random) {
+        // Builder to create the flame accumulator
+        final FlameAccumulator.Builder builder = new FlameAccumulator.Builder(frame, width, height);
 
-            colorIndex = (colorIndex + indexes[rand]) * 0.5;
+        new ChaosGame(this, random).iterate((long) density * height * width, builder);
 
-            // Hits the point on the accumulator
-            builder.hit(p, colorIndex);
-        }
+        // Builds the flame accumulator and returns the arrays of the builder to the pool
+        final FlameAccumulator accumulator = builder.build();
+        builder.release();
 
-        // Builds the flame accumulator and returns it
-        return builder;
+        return accumulator;
     }
 
     /**
@@ -16,14 +16,42 @@ import ch.epfl.flamemaker.geometry2d.Rectangle;
 public final class FlameAccumulator {
 
     /**
-     * Array containing the amount of each field it was hit
+     * Width of the {@code FlameAccumulator}
      */
-    private final int[][] hitCount;
+    private final int width;
 
     /**
-     * Array containing the sum of color indexes for every field
+     * Height of the {@code FlameAccumulator}
      */
-    private final double[][] colorIndexSum;
+    private final int height;
+
+    /**
+     * Array containing the amount of each field it was hit, stored row by row,
+     * {@code null} once released
+     */
+    private int[] hitCount;
+
+    /**
+     * Array containing the sum of color indexes for every field, stored row by row,
+     * {@code null} once released
+     */
+    private double[] colorIndexSum;
+
+    /**
+     * Pool the arrays were taken from, {@code null} if they were not
+     */
+    private final AccumulatorBufferPool pool;
+
+    /**
+     * The highest hit count the intensities are relative to
+     */
+    private final int maxHitCount;
+
+    /**
+     * Amount a hit counts in {@link #hitCount} and {@link #colorIndexSum}: one for accumulators built
+     * from hits, more for filtered accumulators whose fields may contain fractions of hits
+     */
+    private final int countScale;
 
     /**
      * The constant part of the formula to calculate the intensity
@@ -31,45 +59,112 @@ public final class FlameAccumulator {
     private final double intensity_formula;
 
     /**
-     * Creates a new {@code FlameAccumulator} given a 2D-array containing the amount
-     * of each field it was hit
+     * Creates a new {@code FlameAccumulator} given an array containing the amount
+     * of each field it was hit. Field (x, y) is stored at index {@code y * width + x}.
+     * The arrays are not copied, so they must not be modified afterwards
      *
+     * @param width         of the accumulator
+     * @param height        of the accumulator
      * @param hitCount      integer-array how many times each single field was hit
      * @param colorIndexSum double-array containing the sum of color indexes for every field
+     * @param maxHitCount   the highest hit count the intensities are relative to,
+     *                      negative to use the highest hit count of the accumulator
      */
-    private FlameAccumulator(final int[][] hitCount, final double[][] colorIndexSum) {
+    FlameAccumulator(final int width, final int height, final int[] hitCount, final double[] colorIndexSum,
+                     final int maxHitCount) {
+        this(width, height, hitCount, colorIndexSum, maxHitCount, null);
+    }
 
-        this.hitCount = new int[hitCount.length][];
-        this.colorIndexSum = new double[colorIndexSum.length][];
+    /**
+     * Creates a new {@code FlameAccumulator} like {@link #FlameAccumulator(int, int, int[], double[], int)}
+     * whose arrays were taken from the specified pool and are returned to it by {@link #release()}.
+     * The arrays may be longer than {@code width * height}
+     *
+     * @param width         of the accumulator
+     * @param height        of the accumulator
+     * @param hitCount      integer-array how many times each single field was hit
+     * @param colorIndexSum double-array containing the sum of color indexes for every field
+     * @param maxHitCount   the highest hit count the intensities are relative to,
+     *                      negative to use the highest hit count of the accumulator
+     * @param pool          the arrays were taken from, {@code null} if they were not
+     */
+    FlameAccumulator(final int width, final int height, final int[] hitCount, final double[] colorIndexSum,
+                     final int maxHitCount, final AccumulatorBufferPool pool) {
+        this(width, height, hitCount, colorIndexSum, maxHitCount, pool, 1);
+    }
 
-        int max = 0;
-        for (int i = 0; i < hitCount.length; ++i) {
-            // Makes a deep copy of both arrays
-            this.hitCount[i] = hitCount[i].clone();
-            this.colorIndexSum[i] = colorIndexSum[i].clone();
-
-            // Calculates the maximum value of hitCount
-            for (int j = 0; j < hitCount[i].length; ++j) {
-                if (hitCount[i][j] > max) max = hitCount[i][j];
-            }
-        }
+    /**
+     * Creates a new {@code FlameAccumulator} like
+     * {@link #FlameAccumulator(int, int, int[], double[], int, AccumulatorBufferPool)} whose hit counts
+     * and color index sums are fixed-point numbers: a single hit counts {@code countScale} times
+     *
+     * @param width         of the accumulator
+     * @param height        of the accumulator
+     * @param hitCount      integer-array how many times each single field was hit, times the scale
+     * @param colorIndexSum double-array containing the sum of color indexes for every field, times the scale
+     * @param maxHitCount   the highest hit count the intensities are relative to (times the scale),
+     *                      negative to use the highest hit count of the accumulator
+     * @param pool          the arrays were taken from, {@code null} if they were not
+     * @param countScale    amount a single hit counts
+     */
+    FlameAccumulator(final int width, final int height, final int[] hitCount, final double[] colorIndexSum,
+                     final int maxHitCount, final AccumulatorBufferPool pool, final int countScale) {
+        this.width = width;
+        this.height = height;
+        this.hitCount = hitCount;
+        this.colorIndexSum = colorIndexSum;
+        this.pool = pool;
+        this.countScale = countScale;
+
+        // Calculates the maximum value of hitCount if it is not given
+        this.maxHitCount = (maxHitCount < 0) ? max(hitCount, width * height) : maxHitCount;
 
         // Calculates the value of intensity_formula
-        intensity_formula = Math.log(max + 1);
+        intensity_formula = Math.log((double) this.maxHitCount / countScale + 1);
     }
 
     /**
      * @return width of the {@code FlameAccumulator}
      */
     public int width() {
-        return hitCount.length;
+        return width;
     }
 
     /**
      * @return height of the {@code FlameAccumulator}
      */
     public int height() {
-        return hitCount[0].length;
+        return height;
+    }
+
+    /**
+     * @return the highest hit count the intensities are relative to
+     */
+    int maxHitCount() {
+        return maxHitCount;
+    }
+
+    /**
+     * @return the amount a single hit counts in the hit counts and color index sums
+     */
+    int countScale() {
+        return countScale;
+    }
+
+    /**
+     * @return the hit counts of all fields, stored row by row (not a copy, must not be modified,
+     * may be longer than {@code width * height})
+     */
+    int[] hitCounts() {
+        return hitCount;
+    }
+
+    /**
+     * @return the sums of the color indexes of all fields, stored row by row (not a copy, must not be modified,
+     * may be longer than {@code width * height})
+     */
+    double[] colorIndexSums() {
+        return colorIndexSum;
     }
 
     /**
@@ -84,7 +179,7 @@ public final class FlameAccumulator {
             throw new IndexOutOfBoundsException("Specified coordinates are invalid");
         }
 
-        return Math.log(hitCount[x][y] + 1) / intensity_formula;
+        return Math.log((double) hitCount[y * width + x] / countScale + 1) / intensity_formula;
     }
 
     /**
@@ -101,11 +196,13 @@ public final class FlameAccumulator {
             throw new IndexOutOfBoundsException("Specified coordinates are invalid!");
         }
 
+        final int index = y * width + x;
+
         // Checks whether the field was hit or not
-        if (hitCount[x][y] != 0) {
+        if (hitCount[index] != 0) {
 
             // Divides the index by the hitCount, since the index is a sum
-            return palette.colorForIndex(colorIndexSum[x][y] / (double) hitCount[x][y]).
+            return palette.colorForIndex(colorIndexSum[index] / (double) hitCount[index]).
                     mixWidth(background, 1 - intensity(x, y));
         }
 
@@ -113,6 +210,82 @@ public final class FlameAccumulator {
         return background;
     }
 
+    /**
+     * Creates a smaller {@code FlameAccumulator} of the same frame by summing up the hit counts
+     * and color index sums of boxes of fields, so it is the same as a render at the smaller size
+     * with the same points (up to rounding at the borders of the boxes). Every field of this
+     * accumulator belongs to exactly one box, the field (x, y) to the field
+     * {@code (x * width / width(), y * height / height())} of the smaller one. If the dimensions
+     * are divisible, all boxes have the same size, otherwise their sizes differ by at most one field.
+     * <p>
+     * The intensities of the smaller accumulator are relative to its own highest hit count
+     *
+     * @param width  of the smaller accumulator
+     * @param height of the smaller accumulator
+     * @return the smaller {@code FlameAccumulator}
+     * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
+     *                                            or greater than the ones of this accumulator
+     */
+    public FlameAccumulator downsample(final int width, final int height) {
+        if (width <= 0 || height <= 0 || width > this.width || height > this.height) {
+            throw new IllegalArgumentException("Width and height must be greater than zero and not greater than "
+                    + this.width + "x" + this.height);
+        }
+
+        final AccumulatorBufferPool pool = (this.pool != null) ? this.pool : AccumulatorBufferPool.shared();
+        final int[] boxHitCount = pool.takeInts(width * height);
+        final double[] boxColorIndexSum = pool.takeDoubles(width * height);
+
+        // The box column of every column is computed once
+        final int[] boxColumn = new int[this.width];
+        for (int x = 0; x < this.width; ++x) {
+            boxColumn[x] = (int) ((long) x * width / this.width);
+        }
+
+        for (int y = 0; y < this.height; ++y) {
+            final int row = y * this.width;
+            final int boxRow = (int) ((long) y * height / this.height) * width;
+
+            for (int x = 0; x < this.width; ++x) {
+                final int count = hitCount[row + x];
+
+                if (count != 0) {
+                    boxHitCount[boxRow + boxColumn[x]] += count;
+                    boxColorIndexSum[boxRow + boxColumn[x]] += colorIndexSum[row + x];
+                }
+            }
+        }
+
+        return new FlameAccumulator(width, height, boxHitCount, boxColorIndexSum, -1, pool, countScale);
+    }
+
+    /**
+     * Returns the arrays of the {@code FlameAccumulator} to the pool they were taken from,
+     * so they can be reused by the next render. The {@code FlameAccumulator} must not be used anymore
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(hitCount);
+            pool.release(colorIndexSum);
+        }
+
+        hitCount = null;
+        colorIndexSum = null;
+    }
+
+    /**
+     * @param hitCount integer-array how many times each single field was hit
+     * @param size     amount of fields
+     * @return the highest hit count of the array
+     */
+    private static int max(final int[] hitCount, final int size) {
+        int max = 0;
+        for (int i = 0; i < size; ++i) {
+            if (hitCount[i] > max) max = hitCount[i];
+        }
+        return max;
+    }
+
     /**
      * Builder for building a {@code FlameAccumulator}
      *
@@ -120,17 +293,45 @@ public final class FlameAccumulator {
      * @author Platzer Casimir Benjamin		228352
      * @version 1.0
      */
-    public static final class Builder {
+    public static final class Builder implements HitAccumulator {
 
         /**
-         * Array of the grid containing the amount a field was hit
+         * Width of the grid
          */
-        private final int[][] hitCount;
+        private final int width;
 
         /**
-         * Array of the grid containing the colors for each field
+         * Height of the grid
          */
-        private final double[][] colorIndexSum;
+        private final int height;
+
+        /**
+         * First row of the frame contained in the grid
+         */
+        private final int firstRow;
+
+        /**
+         * Array of the grid containing the amount a field was hit, stored row by row,
+         * {@code null} once released
+         */
+        private int[] hitCount;
+
+        /**
+         * Array of the grid containing the colors for each field, stored row by row,
+         * {@code null} once released
+         */
+        private double[] colorIndexSum;
+
+        /**
+         * Pool the arrays of the grid and of the built accumulators are taken from
+         */
+        private final AccumulatorBufferPool pool;
+
+        /**
+         * Buffer collecting the hits before they are applied to the grid, {@code null} if hits
+         * are applied directly
+         */
+        private final HitBatch batch;
 
         /**
          * {@code Rectangle} limiting the area
@@ -152,13 +353,84 @@ public final class FlameAccumulator {
          * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
          */
         public Builder(final Rectangle frame, final int width, final int height) {
+            this(frame, width, height, 0);
+        }
+
+        /**
+         * Creates a new builder for building a flame accumulator which collects up to
+         * {@code batchSize} hits and applies them tile by tile. For large grids this
+         * keeps the writes to the grid cache-friendly, for small grids the direct
+         * application (a {@code batchSize} of zero) is faster
+         *
+         * @param frame     limiting the area
+         * @param width     of the accumulator
+         * @param height    of the accumulator
+         * @param batchSize amount of hits to collect before applying them, zero to apply them directly
+         * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero,
+         *                                            if the grid is too large or if the batch size is negative
+         */
+        public Builder(final Rectangle frame, final int width, final int height, final int batchSize) {
+            this(frame, width, height, batchSize, AccumulatorBufferPool.shared());
+        }
+
+        /**
+         * Creates a new builder for building a flame accumulator like
+         * {@link #Builder(Rectangle, int, int, int)}, taking the arrays of the grid and of the
+         * built accumulators from the specified pool
+         *
+         * @param frame     limiting the area
+         * @param width     of the accumulator
+         * @param height    of the accumulator
+         * @param batchSize amount of hits to collect before applying them, zero to apply them directly
+         * @param pool      to take the arrays from
+         * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero,
+         *                                            if the grid is too large or if the batch size is negative
+         */
+        public Builder(final Rectangle frame, final int width, final int height, final int batchSize,
+                       final AccumulatorBufferPool pool) {
+            this(frame, width, height, 0, height, batchSize, pool);
+        }
+
+        /**
+         * Creates a new builder for building a flame accumulator containing only a horizontal band
+         * of the frame: The frame is divided into a grid of the specified width and height, but only
+         * the hits on the specified rows are kept. The built accumulator has {@code rows} rows, its
+         * row zero being the row {@code firstRow} of the whole grid
+         *
+         * @param frame     limiting the area
+         * @param width     of the whole grid
+         * @param height    of the whole grid
+         * @param firstRow  first row of the band
+         * @param rows      amount of rows of the band
+         * @param batchSize amount of hits to collect before applying them, zero to apply them directly
+         * @param pool      to take the arrays from
+         * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero,
+         *                                            if the band is not contained in the grid, if the band
+         *                                            is too large or if the batch size is negative
+         */
+        Builder(final Rectangle frame, final int width, final int height, final int firstRow, final int rows,
+                final int batchSize, final AccumulatorBufferPool pool) {
             if (width <= 0 || height <= 0) {
                 throw new IllegalArgumentException("Width and height must be greater than zero");
             }
+            if (firstRow < 0 || rows <= 0 || firstRow + rows > height) {
+                throw new IllegalArgumentException("Band must be contained in the grid");
+            }
+            if ((long) width * rows > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Width and height are too large");
+            }
+            if (batchSize < 0) {
+                throw new IllegalArgumentException("Batch size must not be negative");
+            }
 
             this.frame = frame;
-            hitCount = new int[width][height];
-            colorIndexSum = new double[width][height];
+            this.width = width;
+            this.height = rows;
+            this.firstRow = firstRow;
+            this.pool = pool;
+            hitCount = pool.takeInts(width * rows);
+            colorIndexSum = pool.takeDoubles(width * rows);
+            batch = (batchSize > 0) ? new HitBatch(batchSize, width, rows) : null;
 
             final double sX = (double) width / frame.width();
             final double sY = (double) height / frame.height();
@@ -187,6 +459,7 @@ public final class FlameAccumulator {
          * @param p          {@code Point}
          * @param colorIndex of the {@code Point}
          */
+        @Override
         public void hit(Point p, final double colorIndex) {
 
             // Only calculate this if the unmodified frame contains the unmodified Point
@@ -196,23 +469,131 @@ public final class FlameAccumulator {
 
                 // Since the coordinates should be positive, there's no need of Math.floor()
                 final int x = (int) p.x();
-                final int y = (int) p.y();
-
-                // Because of rounding, numbers still might get invalid
-                if (x >= 0 && x < hitCount.length && y >= 0 && y < hitCount[0].length) {
-                    hitCount[x][y] += 1;
-                    colorIndexSum[x][y] += colorIndex;
+                // The row is moved by whole rows only, so a band gets exactly the same rows as the whole grid
+                final int y = (int) p.y() - firstRow;
+
+                // Because of rounding (or the point being outside of the band), numbers still might get invalid
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    if (batch == null) {
+                        final int index = y * width + x;
+                        hitCount[index] += 1;
+                        colorIndexSum[index] += colorIndex;
+                    } else if (batch.add(x, y, colorIndex)) {
+                        // The batch is full, so it is applied to the grid
+                        batch.flush(hitCount, colorIndexSum);
+                    }
                 }
             }
         }
 
+        /**
+         * Adds the hits of the specified {@code FlameAccumulator} to the grid, field by field.
+         * Merging into an empty builder leads to exactly the same fields as the accumulator's
+         *
+         * @param accumulator whose hits to add
+         * @throws java.lang.IllegalArgumentException if the accumulator does not have the same dimensions as the grid
+         *                                            or contains fractions of hits (e.g. if it was filtered)
+         */
+        public void merge(final FlameAccumulator accumulator) {
+            if (accumulator.width() != width || accumulator.height() != height) {
+                throw new IllegalArgumentException("Accumulator must have the same dimensions");
+            }
+            if (accumulator.countScale != 1) {
+                throw new IllegalArgumentException("Accumulator must contain whole hits");
+            }
+
+            // Hits still waiting in the batch were hit before
+            flush();
+
+            final int[] otherHitCount = accumulator.hitCount;
+            final double[] otherColorIndexSum = accumulator.colorIndexSum;
+            final int size = width * height;
+            for (int i = 0; i < size; ++i) {
+                hitCount[i] += otherHitCount[i];
+                colorIndexSum[i] += otherColorIndexSum[i];
+            }
+        }
+
         /**
          * Builds the {@code FlameAccumulator} and returns it
          *
          * @return the built {@code FlameAccumulator}
          */
         public FlameAccumulator build() {
-            return new FlameAccumulator(hitCount, colorIndexSum);
+            return build(-1);
+        }
+
+        /**
+         * Builds the {@code FlameAccumulator} with intensities relative to the specified hit count
+         * instead of its own highest hit count. Used for bands of a bigger grid, which have to
+         * share the highest hit count of the whole grid
+         *
+         * @param maxHitCount the highest hit count the intensities are relative to,
+         *                    negative to use the highest hit count of the accumulator
+         * @return the built {@code FlameAccumulator}
+         */
+        FlameAccumulator build(final int maxHitCount) {
+            flush();
+
+            // The builder keeps on using its arrays, so the accumulator gets a copy
+            final int size = width * height;
+            final int[] hitCountCopy = pool.takeInts(size);
+            final double[] colorIndexSumCopy = pool.takeDoubles(size);
+            System.arraycopy(hitCount, 0, hitCountCopy, 0, size);
+            System.arraycopy(colorIndexSum, 0, colorIndexSumCopy, 0, size);
+
+            return new FlameAccumulator(width, height, hitCountCopy, colorIndexSumCopy, maxHitCount, pool);
+        }
+
+        /**
+         * Builds the {@code FlameAccumulator} like {@link #build(int)}, but hands the arrays of the
+         * grid over instead of copying them, so releasing the accumulator returns them to the pool.
+         * The builder must not be used anymore, as after {@link #release()}
+         *
+         * @param maxHitCount the highest hit count the intensities are relative to,
+         *                    negative to use the highest hit count of the accumulator
+         * @return the built {@code FlameAccumulator}, sharing the arrays of the grid
+         */
+        FlameAccumulator buildInPlace(final int maxHitCount) {
+            flush();
+
+            final FlameAccumulator accumulator =
+                    new FlameAccumulator(width, height, hitCount, colorIndexSum, maxHitCount, pool);
+            hitCount = null;
+            colorIndexSum = null;
+
+            return accumulator;
+        }
+
+        /**
+         * Returns the arrays of the grid to the pool they were taken from, so they can be reused
+         * by the next render. The builder must not be used anymore, but the accumulators built
+         * before stay valid
+         */
+        public void release() {
+            pool.release(hitCount);
+            pool.release(colorIndexSum);
+
+            hitCount = null;
+            colorIndexSum = null;
+        }
+
+        /**
+         * @return the highest hit count of the grid so far
+         */
+        int maxHitCount() {
+            flush();
+
+            return max(hitCount, width * height);
+        }
+
+        /**
+         * Applies the hits still waiting in the batch to the grid
+         */
+        private void flush() {
+            if (batch != null) {
+                batch.flush(hitCount, colorIndexSum);
+            }
         }
     }
 }
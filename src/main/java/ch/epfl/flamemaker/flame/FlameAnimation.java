@@ -0,0 +1,192 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An animation morphing a {@code Flame} through a sequence of keyframes, which all have the
+ * same amount of {@code FlameTransformations}. The frames between two keyframes interpolate
+ * every {@code FlameTransformation} of the one with the one at the same position of the other.
+ * <p>
+ * The variation weights and the translations are interpolated linearly. The linear part of the
+ * {@code AffineTransformations} is split into a rotation and a symmetric matrix (polar
+ * decomposition), the angle being interpolated along the shorter way and the symmetric matrix
+ * linearly, so a rotating transformation keeps its size instead of shrinking halfway
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class FlameAnimation {
+
+    /**
+     * The keyframes
+     */
+    private final List<Flame> keyframes;
+
+    /**
+     * Amount of frames from one keyframe to the next
+     */
+    private final int framesPerKeyframe;
+
+    /**
+     * Creates a new {@code FlameAnimation}
+     *
+     * @param keyframes         the {@code Flames} passed through, the first and the last one being
+     *                          the first and the last frame
+     * @param framesPerKeyframe amount of frames from one keyframe to the next
+     * @throws java.lang.IllegalArgumentException if there are no keyframes, if the keyframes do not
+     *                                            all have the same amount of {@code FlameTransformations}
+     *                                            or if the amount of frames is not greater than zero
+     */
+    public FlameAnimation(final List<Flame> keyframes, final int framesPerKeyframe) {
+        if (keyframes.isEmpty()) {
+            throw new IllegalArgumentException("At least one keyframe is required");
+        }
+        if (framesPerKeyframe <= 0) {
+            throw new IllegalArgumentException("Frames per keyframe must be greater than zero");
+        }
+
+        final int transformations = keyframes.get(0).transformations().size();
+        for (final Flame keyframe : keyframes) {
+            if (keyframe.transformations().size() != transformations) {
+                throw new IllegalArgumentException("Keyframes must have the same amount of transformations");
+            }
+        }
+
+        this.keyframes = new ArrayList<>(keyframes);
+        this.framesPerKeyframe = framesPerKeyframe;
+    }
+
+    /**
+     * @return amount of frames of the animation
+     */
+    public int frameCount() {
+        return (keyframes.size() - 1) * framesPerKeyframe + 1;
+    }
+
+    /**
+     * @param index of the frame
+     * @return the {@code Flame} of the frame
+     * @throws java.lang.IndexOutOfBoundsException if there is no frame with the specified index
+     */
+    public Flame frame(final int index) {
+        if (index < 0 || index >= frameCount()) {
+            throw new IndexOutOfBoundsException("Invalid frame: " + index);
+        }
+
+        final int keyframe = index / framesPerKeyframe;
+        final int step = index % framesPerKeyframe;
+        if (step == 0) {
+            return keyframes.get(keyframe);
+        }
+
+        final List<FlameTransformation> from = keyframes.get(keyframe).transformations();
+        final List<FlameTransformation> to = keyframes.get(keyframe + 1).transformations();
+        final double t = (double) step / framesPerKeyframe;
+
+        final List<FlameTransformation> transformations = new ArrayList<>(from.size());
+        for (int i = 0; i < from.size(); ++i) {
+            transformations.add(interpolate(from.get(i), to.get(i), t));
+        }
+
+        return new Flame(transformations);
+    }
+
+    /**
+     * Interpolates two {@code FlameTransformations}
+     *
+     * @param from {@code FlameTransformation} at zero
+     * @param to   {@code FlameTransformation} at 1.0
+     * @param t    position between the two, from zero to 1.0
+     * @return the interpolated {@code FlameTransformation}
+     */
+    private static FlameTransformation interpolate(final FlameTransformation from, final FlameTransformation to,
+                                                   final double t) {
+        final double[] fromWeights = from.variationWeights();
+        final double[] toWeights = to.variationWeights();
+
+        final double[] weights = new double[fromWeights.length];
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] = lerp(fromWeights[i], toWeights[i], t);
+        }
+
+        return new FlameTransformation(
+                interpolate(from.affineTransformation(), to.affineTransformation(), t), weights);
+    }
+
+    /**
+     * Interpolates two {@code AffineTransformations} through their polar decomposition
+     *
+     * @param from {@code AffineTransformation} at zero
+     * @param to   {@code AffineTransformation} at 1.0
+     * @param t    position between the two, from zero to 1.0
+     * @return the interpolated {@code AffineTransformation}
+     */
+    private static AffineTransformation interpolate(final AffineTransformation from, final AffineTransformation to,
+                                                    final double t) {
+        final double[] p = polar(from.coefficients());
+        final double[] q = polar(to.coefficients());
+
+        // Turns along the shorter way
+        double turn = q[0] - p[0];
+        if (turn > Math.PI) {
+            turn -= 2 * Math.PI;
+        } else if (turn < -Math.PI) {
+            turn += 2 * Math.PI;
+        }
+
+        final double angle = p[0] + turn * t;
+        final double sXX = lerp(p[1], q[1], t);
+        final double sXY = lerp(p[2], q[2], t);
+        final double sYY = lerp(p[3], q[3], t);
+
+        // The rotation applied after the symmetric matrix
+        final double cos = Math.cos(angle);
+        final double sin = Math.sin(angle);
+
+        return new AffineTransformation(
+                cos * sXX - sin * sXY, cos * sXY - sin * sYY, lerp(p[4], q[4], t),
+                sin * sXX + cos * sXY, sin * sXY + cos * sYY, lerp(p[5], q[5], t));
+    }
+
+    /**
+     * Splits the linear part of an {@code AffineTransformation} into a rotation by an angle and a
+     * symmetric matrix, so the linear part is the rotation applied after the symmetric matrix
+     *
+     * @param coefficients of the {@code AffineTransformation}
+     * @return the angle, the components <i>xx, xy, yy</i> of the symmetric matrix and the translations
+     * on the x- and the y-axis
+     */
+    private static double[] polar(final double[] coefficients) {
+        final double a = coefficients[0];
+        final double b = coefficients[1];
+        final double d = coefficients[3];
+        final double e = coefficients[4];
+
+        // The angle of the rotation closest to the linear part, which leaves a symmetric matrix
+        final double angle = Math.atan2(d - b, a + e);
+        final double cos = Math.cos(angle);
+        final double sin = Math.sin(angle);
+
+        return new double[]{
+                angle,
+                cos * a + sin * d,
+                cos * b + sin * e,
+                -sin * b + cos * e,
+                coefficients[2],
+                coefficients[5]};
+    }
+
+    /**
+     * @param from value at zero
+     * @param to   value at 1.0
+     * @param t    position between the two, from zero to 1.0
+     * @return the linearly interpolated value
+     */
+    private static double lerp(final double from, final double to, final double t) {
+        return from + (to - from) * t;
+    }
+}
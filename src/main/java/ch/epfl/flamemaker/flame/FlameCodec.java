@@ -0,0 +1,121 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Point;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads {@code Flames} and {@code Rectangles} in a binary form,
+ * used by all the file formats and protocols of the flame package
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+final class FlameCodec {
+
+    /**
+     * Not instantiable
+     */
+    private FlameCodec() {
+    }
+
+    /**
+     * Writes a {@code Flame}: the amount of transformations followed by the six coefficients
+     * of the affine part and the weights of the variations of every transformation
+     *
+     * @param out   to write to
+     * @param flame to write
+     * @throws IOException if the {@code Flame} could not be written
+     */
+    static void writeFlame(final DataOutput out, final Flame flame) throws IOException {
+        final List<FlameTransformation> transformations = flame.transformations();
+
+        out.writeInt(transformations.size());
+        for (final FlameTransformation transformation : transformations) {
+            for (final double coefficient : transformation.affineTransformation().coefficients()) {
+                out.writeDouble(coefficient);
+            }
+
+            final double[] weights = transformation.variationWeights();
+            out.writeInt(weights.length);
+            for (final double weight : weights) {
+                out.writeDouble(weight);
+            }
+        }
+    }
+
+    /**
+     * Reads a {@code Flame} written by {@link #writeFlame(DataOutput, Flame)}
+     *
+     * @param in to read from
+     * @return the read {@code Flame}
+     * @throws IOException if the {@code Flame} could not be read or is invalid
+     */
+    static Flame readFlame(final DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid amount of transformations: " + size);
+        }
+
+        final List<FlameTransformation> transformations = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            final AffineTransformation affine = new AffineTransformation(
+                    in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readDouble(), in.readDouble());
+
+            final int variations = in.readInt();
+            if (variations != Variation.ALL_VARIATIONS.size()) {
+                throw new IOException("Invalid amount of variation weights: " + variations);
+            }
+
+            final double[] weights = new double[variations];
+            for (int j = 0; j < variations; ++j) {
+                weights[j] = in.readDouble();
+            }
+
+            transformations.add(new FlameTransformation(affine, weights));
+        }
+
+        return new Flame(transformations);
+    }
+
+    /**
+     * Writes a {@code Rectangle}: the coordinates of its center followed by its width and height
+     *
+     * @param out       to write to
+     * @param rectangle to write
+     * @throws IOException if the {@code Rectangle} could not be written
+     */
+    static void writeRectangle(final DataOutput out, final Rectangle rectangle) throws IOException {
+        out.writeDouble(rectangle.center().x());
+        out.writeDouble(rectangle.center().y());
+        out.writeDouble(rectangle.width());
+        out.writeDouble(rectangle.height());
+    }
+
+    /**
+     * Reads a {@code Rectangle} written by {@link #writeRectangle(DataOutput, Rectangle)}
+     *
+     * @param in to read from
+     * @return the read {@code Rectangle}
+     * @throws IOException if the {@code Rectangle} could not be read or is invalid
+     */
+    static Rectangle readRectangle(final DataInput in) throws IOException {
+        final Point center = new Point(in.readDouble(), in.readDouble());
+        final double width = in.readDouble();
+        final double height = in.readDouble();
+
+        if (!(width > 0 && height > 0)) {
+            throw new IOException("Invalid dimensions of rectangle");
+        }
+
+        return new Rectangle(center, width, height);
+    }
+}
@@ -0,0 +1,468 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The raw (not tone-mapped) content of a {@code FlameAccumulator} together with the {@code Flame},
+ * the frame and the amount of iterations it was computed with, which can be written to and read
+ * from a compact binary format.
+ * <p>
+ * The format consists of a header followed by the fields, row by row. Runs of fields which
+ * were not hit are stored as their length only, every other field as the difference of its hit
+ * count to the hit count of the previous hit field followed by the bits of its color index sum:
+ * <pre>
+ *  header : "FLMH" version width height iterations countScale frame flame
+ *  body   : chunk* 0
+ *  chunk  : length(int) byte[length]
+ *  fields : (emptyRun(varint) countDelta(zigzag varint) colorIndexSum(8 bytes))* [emptyRun(varint)]
+ * </pre>
+ * The low bits of a color index sum are practically random, so they are stored as they are.
+ * Version 1 did not contain the count scale, it is read as a scale of one.
+ * The body is split into length-prefixed chunks, so a histogram can be read from a stream
+ * without reading past its end
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class FlameHistogram {
+
+    /**
+     * First bytes of a histogram ("FLMH")
+     */
+    private static final int MAGIC = 0x464C4D48;
+
+    /**
+     * Version of the format
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Maximum size of a chunk of the body
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The {@code Flame} the histogram was computed from
+     */
+    private final Flame flame;
+
+    /**
+     * {@code Rectangle} limiting the area
+     */
+    private final Rectangle frame;
+
+    /**
+     * Amount of iterations the histogram was computed with
+     */
+    private final long iterations;
+
+    /**
+     * The fields of the histogram
+     */
+    private final FlameAccumulator accumulator;
+
+    /**
+     * Creates a new {@code FlameHistogram}
+     *
+     * @param flame       the histogram was computed from
+     * @param frame       limiting the area
+     * @param iterations  the histogram was computed with
+     * @param accumulator containing the fields
+     */
+    public FlameHistogram(final Flame flame, final Rectangle frame, final long iterations,
+                          final FlameAccumulator accumulator) {
+        this.flame = flame;
+        this.frame = frame;
+        this.iterations = iterations;
+        this.accumulator = accumulator;
+    }
+
+    /**
+     * @return the {@code Flame} the histogram was computed from
+     */
+    public Flame flame() {
+        return flame;
+    }
+
+    /**
+     * @return the {@code Rectangle} limiting the area
+     */
+    public Rectangle frame() {
+        return frame;
+    }
+
+    /**
+     * @return the amount of iterations the histogram was computed with
+     */
+    public long iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the {@code FlameAccumulator} containing the fields
+     */
+    public FlameAccumulator accumulator() {
+        return accumulator;
+    }
+
+    /**
+     * Writes the histogram to the specified stream, which is flushed but not closed
+     *
+     * @param stream to write to
+     * @throws IOException if the histogram could not be written
+     */
+    public void write(final OutputStream stream) throws IOException {
+        final int width = accumulator.width();
+        final int height = accumulator.height();
+
+        // The header is collected first, so it is written at once
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeLong(iterations);
+            out.writeInt(accumulator.countScale());
+            FlameCodec.writeRectangle(out, frame);
+            FlameCodec.writeFlame(out, flame);
+        }
+        header.writeTo(stream);
+
+        final Encoder encoder = new Encoder(stream);
+        final int[] hitCount = accumulator.hitCounts();
+        final double[] colorIndexSum = accumulator.colorIndexSums();
+        final int size = width * height;
+
+        int run = 0;
+        int previous = 0;
+        for (int i = 0; i < size; ++i) {
+            final int count = hitCount[i];
+
+            if (count == 0) {
+                ++run;
+            } else {
+                encoder.varint(run);
+                encoder.varint(zigzag(count - previous));
+                encoder.bits(Double.doubleToRawLongBits(colorIndexSum[i]));
+
+                run = 0;
+                previous = count;
+            }
+        }
+
+        // Fields at the end which were not hit
+        if (run > 0) {
+            encoder.varint(run);
+        }
+
+        encoder.finish();
+        stream.flush();
+    }
+
+    /**
+     * Reads a histogram from the specified stream, which is read exactly up to the end of the histogram
+     *
+     * @param stream to read from
+     * @return the read histogram
+     * @throws IOException if the histogram could not be read or is invalid
+     */
+    public static FlameHistogram read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a flame histogram");
+        }
+
+        final int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported version of flame histogram: " + version);
+        }
+
+        final int width = in.readInt();
+        final int height = in.readInt();
+        final long iterations = in.readLong();
+        final int countScale = (version >= 2) ? in.readInt() : 1;
+        final Rectangle frame = FlameCodec.readRectangle(in);
+        final Flame flame = FlameCodec.readFlame(in);
+
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IOException("Invalid dimensions of flame histogram");
+        }
+        if (countScale <= 0) {
+            throw new IOException("Invalid count scale of flame histogram: " + countScale);
+        }
+
+        final Decoder decoder = new Decoder(in);
+        final AccumulatorBufferPool pool = AccumulatorBufferPool.shared();
+        final int size = width * height;
+        final int[] hitCount = pool.takeInts(size);
+        final double[] colorIndexSum = pool.takeDoubles(size);
+
+        // The arrays go back to the pool if the stream is truncated or corrupt
+        try {
+            int index = 0;
+            int previous = 0;
+            while (index < size) {
+                final int run = decoder.varint();
+                if (run < 0 || run > size - index) {
+                    throw new IOException("Invalid run of empty fields");
+                }
+
+                index += run;
+                if (index == size) {
+                    break;
+                }
+
+                // Only fields which were hit are stored
+                previous += unzigzag(decoder.varint());
+                if (previous <= 0) {
+                    throw new IOException("Invalid hit count: " + previous);
+                }
+
+                hitCount[index] = previous;
+                colorIndexSum[index] = Double.longBitsToDouble(decoder.bits());
+                ++index;
+            }
+
+            decoder.finish();
+        } catch (final IOException | RuntimeException exception) {
+            pool.release(hitCount);
+            pool.release(colorIndexSum);
+            throw exception;
+        }
+
+        return new FlameHistogram(flame, frame, iterations,
+                new FlameAccumulator(width, height, hitCount, colorIndexSum, -1, pool, countScale));
+    }
+
+    /**
+     * @param value to encode
+     * @return the value mapped to a non-negative integer: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+     */
+    private static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * @param value encoded by {@link #zigzag(int)}
+     * @return the decoded value
+     */
+    private static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Encodes values into length-prefixed chunks
+     *
+     * @author Groux Marcel Jean Jacques	227630
+     * @author Platzer Casimir Benjamin		228352
+     * @version 1.0
+     */
+    private static final class Encoder {
+
+        /**
+         * Buffer containing the current chunk, behind the space for its length
+         */
+        private final byte[] buffer = new byte[Integer.BYTES + CHUNK_SIZE];
+
+        /**
+         * Stream the chunks are written to
+         */
+        private final OutputStream stream;
+
+        /**
+         * Position in the buffer
+         */
+        private int position = Integer.BYTES;
+
+        /**
+         * Creates a new {@code Encoder}
+         *
+         * @param stream to write the chunks to
+         */
+        Encoder(final OutputStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Encodes a non-negative integer using 7 bits per byte, the highest bit telling
+         * whether more bytes follow
+         *
+         * @param value to encode
+         * @throws IOException if a chunk could not be written
+         */
+        void varint(int value) throws IOException {
+            ensure(5);
+
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * Encodes 64 bits as they are (big-endian)
+         *
+         * @param value to encode
+         * @throws IOException if a chunk could not be written
+         */
+        void bits(final long value) throws IOException {
+            ensure(8);
+
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Writes the last chunk followed by the empty chunk marking the end
+         *
+         * @throws IOException if a chunk could not be written
+         */
+        void finish() throws IOException {
+            writeChunk();
+            writeChunk();
+        }
+
+        /**
+         * Makes sure the specified amount of bytes fits into the current chunk
+         *
+         * @param bytes to fit
+         * @throws IOException if a chunk could not be written
+         */
+        private void ensure(final int bytes) throws IOException {
+            if (position + bytes > buffer.length) {
+                writeChunk();
+            }
+        }
+
+        /**
+         * Writes the current chunk prefixed with its length and starts a new one
+         *
+         * @throws IOException if the chunk could not be written
+         */
+        private void writeChunk() throws IOException {
+            final int length = position - Integer.BYTES;
+
+            buffer[0] = (byte) (length >>> 24);
+            buffer[1] = (byte) (length >>> 16);
+            buffer[2] = (byte) (length >>> 8);
+            buffer[3] = (byte) length;
+
+            stream.write(buffer, 0, position);
+            position = Integer.BYTES;
+        }
+    }
+
+    /**
+     * Decodes values from length-prefixed chunks
+     *
+     * @author Groux Marcel Jean Jacques	227630
+     * @author Platzer Casimir Benjamin		228352
+     * @version 1.0
+     */
+    private static final class Decoder {
+
+        /**
+         * Buffer containing the current chunk
+         */
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+
+        /**
+         * Stream the chunks are read from
+         */
+        private final DataInputStream in;
+
+        /**
+         * Position in the buffer
+         */
+        private int position = 0;
+
+        /**
+         * Length of the current chunk
+         */
+        private int length = 0;
+
+        /**
+         * Creates a new {@code Decoder}
+         *
+         * @param in to read the chunks from
+         */
+        Decoder(final DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return the next integer encoded by {@link Encoder#varint(int)}
+         * @throws IOException if the integer could not be read
+         */
+        int varint() throws IOException {
+            int value = 0;
+
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = next();
+                value |= (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Invalid variable-length integer");
+        }
+
+        /**
+         * @return the next 64 bits encoded by {@link Encoder#bits(long)}
+         * @throws IOException if the bits could not be read
+         */
+        long bits() throws IOException {
+            long value = 0;
+
+            for (int i = 0; i < 8; ++i) {
+                value = (value << 8) | next();
+            }
+
+            return value;
+        }
+
+        /**
+         * Reads the empty chunk marking the end
+         *
+         * @throws IOException if the end is missing
+         */
+        void finish() throws IOException {
+            if (position != length || in.readInt() != 0) {
+                throw new IOException("Invalid end of flame histogram");
+            }
+        }
+
+        /**
+         * @return the next byte, reading the next chunk if necessary
+         * @throws IOException if the byte could not be read
+         */
+        private int next() throws IOException {
+            if (position == length) {
+                length = in.readInt();
+                if (length <= 0 || length > CHUNK_SIZE) {
+                    throw new EOFException("Unexpected end of flame histogram");
+                }
+
+                in.readFully(buffer, 0, length);
+                position = 0;
+            }
+
+            return buffer[position++] & 0xFF;
+        }
+    }
+}
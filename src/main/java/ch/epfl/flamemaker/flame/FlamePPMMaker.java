@@ -6,8 +6,8 @@ import ch.epfl.flamemaker.color.Palette;
 import ch.epfl.flamemaker.geometry2d.Point;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
 
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 
 /**
@@ -31,6 +31,7 @@ public final class FlamePPMMaker {
                 p,
                 Color.BLACK,
                 "turbulence.ppm");
+
         saveFile(Flame.SHARKFIN.compute(
                         new Rectangle(new Point(-0.25, 0), 5, 4), 500, 400, 50),
                 p,
@@ -39,7 +40,7 @@ public final class FlamePPMMaker {
     }
 
     /**
-     * Creates a .ppm-file given the needed values
+     * Creates a binary .ppm-file (P6, maximal value 255) given the needed values
      *
      * @param ac         the {@code FlameAccumulator} the {@code Flame} is stored in
      * @param p          {@code Palette} for painting the {@code Flame}
@@ -47,32 +48,9 @@ public final class FlamePPMMaker {
      * @param filename   of the .ppm-file (Including path)
      */
     private static void saveFile(final FlameAccumulator ac, final Palette p, final Color background, final String filename) {
-        PrintStream out = null;
-
-        final int width = ac.width();
-        final int height = ac.height();
-
-        try (final PrintStream outputStream = new PrintStream(filename)) {
-            Color tmp;
-
-            // Fills the file with the needed values
-            outputStream.println("P3");
-            outputStream.printf("%d %d\n", width, height);
-            outputStream.println("100");
-
-            for (int j = height - 1; j >= 0; --j) {
-                for (int i = 0; i < width; ++i) {
-                    tmp = ac.color(p, background, i, j);
-
-                    // Prints out the values of the color-components
-                    outputStream.printf("%d %d %d ",
-                            Color.sRGBEncode(tmp.red(), 100),
-                            Color.sRGBEncode(tmp.green(), 100),
-                            Color.sRGBEncode(tmp.blue(), 100));
-                }
-                outputStream.println();
-            }
-        } catch (final FileNotFoundException exception) {
+        try {
+            NetpbmWriter.write(ac, Paths.get(filename), NetpbmWriter.Format.PPM, p, background);
+        } catch (final IOException exception) {
             exception.printStackTrace();
         }
 
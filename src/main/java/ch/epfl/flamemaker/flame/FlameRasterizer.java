@@ -0,0 +1,277 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.color.PaletteTable;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Converts the fields of a {@code FlameAccumulator} into pixels in bulk, writing packed RGB or ARGB
+ * integers or RGB bytes straight into an array. The colors are the same as the ones of
+ * {@link FlameAccumulator#color(Palette, Color, int, int)} encoded by {@link Color#asPackedRGB()},
+ * except that the {@code Palette} is compiled once into a {@link PaletteTable} of
+ * {@link PaletteTable#DEFAULT_RESOLUTION} entries.
+ * <p>
+ * The intensities and the sRGB encoding are looked up in the tables of a {@link ToneMap}, by default
+ * {@link ToneMap#DEFAULT} which leaves the intensities unchanged. No objects are created per pixel.
+ * Large areas are divided into rows converted in parallel. Rows are written from the top to the
+ * bottom one, so the first row of the array is the highest row of the accumulator
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class FlameRasterizer {
+
+    /**
+     * Amount of pixels from which on the rows are converted in parallel
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /**
+     * The compiled {@code Palette}
+     */
+    private final PaletteTable palette;
+
+    /**
+     * Maps the hit counts to intensities
+     */
+    private final ToneMap toneMap;
+
+    /**
+     * Background {@code Color}
+     */
+    private final Color background;
+
+    /**
+     * Background {@code Color} as packed RGB integer
+     */
+    private final int packedBackground;
+
+    /**
+     * Creates a new {@code FlameRasterizer}
+     *
+     * @param palette    {@code Palette} for painting the {@code Flame}, compiled once
+     * @param background {@code Color} of the fields which were not hit
+     */
+    public FlameRasterizer(final Palette palette, final Color background) {
+        this(palette, background, ToneMap.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code FlameRasterizer} using the specified {@code ToneMap}
+     *
+     * @param palette    {@code Palette} for painting the {@code Flame}, compiled once
+     * @param background {@code Color} of the fields which were not hit
+     * @param toneMap    mapping the hit counts to intensities
+     */
+    public FlameRasterizer(final Palette palette, final Color background, final ToneMap toneMap) {
+        this.palette = palette.compile(PaletteTable.DEFAULT_RESOLUTION);
+        this.toneMap = toneMap;
+        this.background = background;
+        this.packedBackground = background.asPackedRGB();
+    }
+
+    /**
+     * Writes the whole accumulator as packed RGB integers (0xRRGGBB), row by row
+     *
+     * @param accumulator to convert
+     * @param pixels      to write to, at least {@code width * height} long
+     * @throws java.lang.IndexOutOfBoundsException if the array is too short
+     */
+    public void toPackedRGB(final FlameAccumulator accumulator, final int[] pixels) {
+        toPackedRGB(accumulator, 0, 0, accumulator.width(), accumulator.height(), pixels, 0, accumulator.width());
+    }
+
+    /**
+     * Writes an area of the accumulator as packed RGB integers (0xRRGGBB), row by row
+     *
+     * @param accumulator to convert
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @param pixels      to write to
+     * @param offset      index of the first pixel in the array
+     * @param scanline    distance between two rows in the array
+     * @throws java.lang.IndexOutOfBoundsException if the area is not contained in the accumulator
+     *                                             or the array is too short
+     */
+    public void toPackedRGB(final FlameAccumulator accumulator, final int left, final int top, final int width,
+                            final int height, final int[] pixels, final int offset, final int scanline) {
+        toPacked(accumulator, left, top, width, height, pixels, offset, scanline, 0);
+    }
+
+    /**
+     * Writes the whole accumulator as opaque packed ARGB integers (0xFFRRGGBB), row by row
+     *
+     * @param accumulator to convert
+     * @param pixels      to write to, at least {@code width * height} long
+     * @throws java.lang.IndexOutOfBoundsException if the array is too short
+     */
+    public void toPackedARGB(final FlameAccumulator accumulator, final int[] pixels) {
+        toPackedARGB(accumulator, 0, 0, accumulator.width(), accumulator.height(), pixels, 0, accumulator.width());
+    }
+
+    /**
+     * Writes an area of the accumulator as opaque packed ARGB integers (0xFFRRGGBB), row by row
+     *
+     * @param accumulator to convert
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @param pixels      to write to
+     * @param offset      index of the first pixel in the array
+     * @param scanline    distance between two rows in the array
+     * @throws java.lang.IndexOutOfBoundsException if the area is not contained in the accumulator
+     *                                             or the array is too short
+     */
+    public void toPackedARGB(final FlameAccumulator accumulator, final int left, final int top, final int width,
+                             final int height, final int[] pixels, final int offset, final int scanline) {
+        toPacked(accumulator, left, top, width, height, pixels, offset, scanline, 0xFF000000);
+    }
+
+    /**
+     * Writes the whole accumulator as RGB bytes (three bytes per pixel), row by row
+     *
+     * @param accumulator to convert
+     * @param pixels      to write to, at least {@code 3 * width * height} long
+     * @throws java.lang.IndexOutOfBoundsException if the array is too short
+     */
+    public void toRGBBytes(final FlameAccumulator accumulator, final byte[] pixels) {
+        toRGBBytes(accumulator, 0, 0, accumulator.width(), accumulator.height(), pixels, 0, 3 * accumulator.width());
+    }
+
+    /**
+     * Writes an area of the accumulator as RGB bytes (three bytes per pixel), row by row
+     *
+     * @param accumulator to convert
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @param pixels      to write to
+     * @param offset      index of the first byte in the array
+     * @param scanline    distance between two rows in the array, in bytes
+     * @throws java.lang.IndexOutOfBoundsException if the area is not contained in the accumulator
+     *                                             or the array is too short
+     */
+    public void toRGBBytes(final FlameAccumulator accumulator, final int left, final int top, final int width,
+                           final int height, final byte[] pixels, final int offset, final int scanline) {
+        checkArea(accumulator, left, top, width, height);
+        if (height > 0 && ((long) offset + (long) (height - 1) * scanline + 3L * width > pixels.length)) {
+            throw new IndexOutOfBoundsException("Array is too short");
+        }
+
+        final int[] hitCount = accumulator.hitCounts();
+        final double[] colorIndexSum = accumulator.colorIndexSums();
+        final ToneMap.Intensities intensities = toneMap.intensities(accumulator);
+
+        rows(width, height, j -> {
+            final int row = (accumulator.height() - 1 - (top + j)) * accumulator.width();
+            int index = offset + j * scanline;
+
+            for (int x = left; x < left + width; ++x) {
+                final int rgb = packedRGB(hitCount[row + x], colorIndexSum[row + x], intensities);
+                pixels[index++] = (byte) (rgb >>> 16);
+                pixels[index++] = (byte) (rgb >>> 8);
+                pixels[index++] = (byte) rgb;
+            }
+        });
+    }
+
+    /**
+     * Writes an area of the accumulator as packed integers
+     *
+     * @param accumulator to convert
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @param pixels      to write to
+     * @param offset      index of the first pixel in the array
+     * @param scanline    distance between two rows in the array
+     * @param alpha       bits added to every pixel
+     */
+    private void toPacked(final FlameAccumulator accumulator, final int left, final int top, final int width,
+                          final int height, final int[] pixels, final int offset, final int scanline,
+                          final int alpha) {
+        checkArea(accumulator, left, top, width, height);
+        if (height > 0 && ((long) offset + (long) (height - 1) * scanline + width > pixels.length)) {
+            throw new IndexOutOfBoundsException("Array is too short");
+        }
+
+        final int[] hitCount = accumulator.hitCounts();
+        final double[] colorIndexSum = accumulator.colorIndexSums();
+        final ToneMap.Intensities intensities = toneMap.intensities(accumulator);
+
+        rows(width, height, j -> {
+            final int row = (accumulator.height() - 1 - (top + j)) * accumulator.width();
+            int index = offset + j * scanline;
+
+            for (int x = left; x < left + width; ++x) {
+                pixels[index++] = alpha | packedRGB(hitCount[row + x], colorIndexSum[row + x], intensities);
+            }
+        });
+    }
+
+    /**
+     * Converts the rows of an area, in parallel if the area is large
+     *
+     * @param width  of the area
+     * @param height of the area
+     * @param row    converting the row with the specified index
+     */
+    private static void rows(final int width, final int height, final IntConsumer row) {
+        if ((long) width * height >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, height).parallel().forEach(row);
+        } else {
+            for (int j = 0; j < height; ++j) {
+                row.accept(j);
+            }
+        }
+    }
+
+    /**
+     * @param count         hit count of the field
+     * @param colorIndexSum sum of the color indexes of the field
+     * @param intensities   of the hit counts
+     * @return the color of the field as packed RGB integer
+     */
+    private int packedRGB(final int count, final double colorIndexSum, final ToneMap.Intensities intensities) {
+        if (count == 0) {
+            return packedBackground;
+        }
+
+        final int entry = palette.entry(colorIndexSum / (double) count);
+
+        // The same mixing as Color.mixWidth()
+        final double proportion = 1 - intensities.intensity(count);
+        final double r = background.red() * proportion + (1.0 - proportion) * palette.red(entry);
+        final double g = background.green() * proportion + (1.0 - proportion) * palette.green(entry);
+        final double b = background.blue() * proportion + (1.0 - proportion) * palette.blue(entry);
+
+        return (ToneMap.sRGBEncode(r) << 16) | (ToneMap.sRGBEncode(g) << 8) | ToneMap.sRGBEncode(b);
+    }
+
+    /**
+     * Checks whether the area is contained in the accumulator
+     *
+     * @param accumulator containing the area
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @throws java.lang.IndexOutOfBoundsException if the area is not contained in the accumulator
+     */
+    private static void checkArea(final FlameAccumulator accumulator, final int left, final int top,
+                                  final int width, final int height) {
+        if (left < 0 || top < 0 || width < 0 || height < 0
+                || left + width > accumulator.width() || top + height > accumulator.height()) {
+            throw new IndexOutOfBoundsException("Area is not contained in the accumulator");
+        }
+    }
+}
@@ -41,6 +41,20 @@ public final class FlameTransformation implements Transformation {
         this.variationWeight = variationWeight.clone();
     }
 
+    /**
+     * @return the affine part of the {@code FlameTransformation}
+     */
+    AffineTransformation affineTransformation() {
+        return affineTransformation;
+    }
+
+    /**
+     * @return a copy of the weights of the different variations
+     */
+    double[] variationWeights() {
+        return variationWeight.clone();
+    }
+
     @Override
     public Point transformPoint(Point p) {
 
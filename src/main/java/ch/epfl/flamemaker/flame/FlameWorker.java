@@ -0,0 +1,85 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Worker process of a {@link DistributedFlameRenderer}, computing shards of a render
+ * on behalf of the coordinator.
+ * <p>
+ * The worker reads the job from its standard input: the {@code Flame}, the frame, the width and
+ * the height, followed by the seed and the amount of iterations of every shard to compute. For
+ * every shard, a {@link FlameHistogram} is written to the standard output. The worker exits as
+ * soon as its standard input is closed
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class FlameWorker {
+
+    /**
+     * Not instantiable
+     */
+    private FlameWorker() {
+    }
+
+    public static void main(final String[] arguments) throws IOException {
+        // The standard output carries the histograms, so nothing else may be printed to it
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+
+        final Flame flame = FlameCodec.readFlame(in);
+        final Rectangle frame = FlameCodec.readRectangle(in);
+        final int width = in.readInt();
+        final int height = in.readInt();
+
+        while (true) {
+            final long seed;
+            try {
+                seed = in.readLong();
+            } catch (final EOFException exception) {
+                // The coordinator has no more shards
+                break;
+            }
+            final long iterations = in.readLong();
+
+            final FlameAccumulator partial = computeShard(flame, frame, width, height, seed, iterations);
+            new FlameHistogram(flame, frame, iterations, partial).write(out);
+            partial.release();
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Computes one shard of a render
+     *
+     * @param flame      to compute
+     * @param frame      limiting the area
+     * @param width      of the accumulator
+     * @param height     of the {@code FlameAccumulator}
+     * @param seed       of the random number generator of the shard
+     * @param iterations of the shard
+     * @return {@code FlameAccumulator} containing the hits of the shard
+     */
+    static FlameAccumulator computeShard(final Flame flame, final Rectangle frame, final int width,
+                                         final int height, final long seed, final long iterations) {
+        final FlameAccumulator.Builder builder = new FlameAccumulator.Builder(frame, width, height);
+        new ChaosGame(flame, seed).iterate(iterations, builder);
+
+        final FlameAccumulator accumulator = builder.build();
+        builder.release();
+
+        return accumulator;
+    }
+}
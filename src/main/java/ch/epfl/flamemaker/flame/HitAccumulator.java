@@ -0,0 +1,22 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.Point;
+
+/**
+ * Interface for the builders the points of a {@code Flame} can be hit on
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ * @see Flame#compute(long, HitAccumulator)
+ */
+public interface HitAccumulator {
+
+    /**
+     * Hits the field containing the specified {@code Point}
+     *
+     * @param p          {@code Point}
+     * @param colorIndex of the {@code Point}
+     */
+    void hit(final Point p, final double colorIndex);
+}
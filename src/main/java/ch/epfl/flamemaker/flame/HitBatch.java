@@ -0,0 +1,145 @@
+package ch.epfl.flamemaker.flame;
+
+import java.util.Arrays;
+
+/**
+ * A buffer collecting hits for a {@code FlameAccumulator.Builder}. Once full, the hits
+ * are sorted by the tile of the grid they belong to and applied tile by tile, so
+ * the writes to the (possibly huge) grid reuse cache lines and TLB entries instead
+ * of missing them on every single hit
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ * @see FlameAccumulator.Builder
+ */
+final class HitBatch {
+
+    /**
+     * Edge length of the square tiles as a power of two (64 x 64 fields)
+     */
+    private static final int TILE_SHIFT = 6;
+
+    /**
+     * Width of the grid
+     */
+    private final int width;
+
+    /**
+     * Amount of tiles in a row of the grid
+     */
+    private final int tilesPerRow;
+
+    /**
+     * Indexes of the hit fields, in the order they were hit
+     */
+    private final int[] indexes;
+
+    /**
+     * Tiles of the hit fields, in the order they were hit
+     */
+    private final int[] tiles;
+
+    /**
+     * Color indexes of the hits, in the order they were hit
+     */
+    private final double[] colorIndexes;
+
+    /**
+     * Indexes of the hit fields, sorted by tile
+     */
+    private final int[] sortedIndexes;
+
+    /**
+     * Color indexes of the hits, sorted by tile
+     */
+    private final double[] sortedColorIndexes;
+
+    /**
+     * Position of the first hit of every tile in the sorted arrays
+     */
+    private final int[] tileStarts;
+
+    /**
+     * Amount of hits in the batch
+     */
+    private int size = 0;
+
+    /**
+     * Creates a new, empty {@code HitBatch}
+     *
+     * @param capacity amount of hits the batch can hold
+     * @param width    of the grid
+     * @param height   of the grid
+     */
+    HitBatch(final int capacity, final int width, final int height) {
+        this.width = width;
+
+        tilesPerRow = ((width - 1) >> TILE_SHIFT) + 1;
+        final int tilesPerColumn = ((height - 1) >> TILE_SHIFT) + 1;
+
+        indexes = new int[capacity];
+        tiles = new int[capacity];
+        colorIndexes = new double[capacity];
+        sortedIndexes = new int[capacity];
+        sortedColorIndexes = new double[capacity];
+        tileStarts = new int[tilesPerRow * tilesPerColumn + 1];
+    }
+
+    /**
+     * Adds a hit to the batch
+     *
+     * @param x          coordinate (field)
+     * @param y          coordinate (field)
+     * @param colorIndex of the hit
+     * @return whether the batch is full and has to be flushed
+     */
+    boolean add(final int x, final int y, final double colorIndex) {
+        indexes[size] = y * width + x;
+        tiles[size] = (y >> TILE_SHIFT) * tilesPerRow + (x >> TILE_SHIFT);
+        colorIndexes[size] = colorIndex;
+
+        return ++size == indexes.length;
+    }
+
+    /**
+     * Applies all the hits of the batch to the grid and empties the batch.
+     * The sort is stable, so the hits of a field are summed up in the same order
+     * as without batching and the result is exactly the same
+     *
+     * @param hitCount      of the grid
+     * @param colorIndexSum of the grid
+     */
+    void flush(final int[] hitCount, final double[] colorIndexSum) {
+        if (size == 0) {
+            return;
+        }
+
+        // Counting sort by tile: counts the hits of every tile...
+        Arrays.fill(tileStarts, 0);
+        for (int i = 0; i < size; ++i) {
+            ++tileStarts[tiles[i] + 1];
+        }
+
+        // ...turns the counts into start positions...
+        for (int i = 1; i < tileStarts.length; ++i) {
+            tileStarts[i] += tileStarts[i - 1];
+        }
+
+        // ...and moves every hit to its position
+        for (int i = 0; i < size; ++i) {
+            final int position = tileStarts[tiles[i]]++;
+            sortedIndexes[position] = indexes[i];
+            sortedColorIndexes[position] = colorIndexes[i];
+        }
+
+        // Applies the hits tile by tile
+        for (int i = 0; i < size; ++i) {
+            final int index = sortedIndexes[i];
+            hitCount[index] += 1;
+            colorIndexSum[index] += sortedColorIndexes[i];
+        }
+
+        size = 0;
+    }
+}
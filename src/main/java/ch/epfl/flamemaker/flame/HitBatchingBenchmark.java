@@ -0,0 +1,96 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.geometry2d.Point;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+/**
+ * Compares the direct application of hits with the tile-sorted batches of
+ * {@code FlameAccumulator.Builder} for growing resolutions and prints the
+ * resolution from which on batching wins.
+ * <p>
+ * Usage: {@code HitBatchingBenchmark [batchSize [iterations [resolution...]]]}
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class HitBatchingBenchmark {
+
+    /**
+     * Default amount of hits collected per batch
+     */
+    private static final int BATCH_SIZE = 1 << 16;
+
+    /**
+     * Default amount of iterations per render, the same for every resolution
+     */
+    private static final int ITERATIONS = 20000000;
+
+    /**
+     * Default edge lengths of the (square) renders
+     */
+    private static final int[] RESOLUTIONS = {256, 512, 1024, 2048, 4096};
+
+    public static void main(final String[] arguments) {
+        final int batchSize = (arguments.length > 0) ? Integer.parseInt(arguments[0]) : BATCH_SIZE;
+        final int iterations = (arguments.length > 1) ? Integer.parseInt(arguments[1]) : ITERATIONS;
+
+        int[] resolutions = RESOLUTIONS;
+        if (arguments.length > 2) {
+            resolutions = new int[arguments.length - 2];
+            for (int i = 0; i < resolutions.length; ++i) {
+                resolutions[i] = Integer.parseInt(arguments[i + 2]);
+            }
+        }
+
+        final Rectangle frame = new Rectangle(new Point(-0.25, 0), 5, 4);
+
+        // Warms up the JIT for both variants
+        time(frame, 256, batchSize, iterations / 4);
+        time(frame, 256, 0, iterations / 4);
+
+        System.out.printf("%10s %12s %12s %8s\n", "resolution", "direct [ms]", "batched [ms]", "speedup");
+
+        int crossover = -1;
+        for (final int resolution : resolutions) {
+            final long direct = time(frame, resolution, 0, iterations);
+            final long batched = time(frame, resolution, batchSize, iterations);
+
+            System.out.printf("%10d %12d %12d %8.2f\n", resolution, direct, batched, (double) direct / batched);
+
+            if (batched < direct && crossover < 0) {
+                crossover = resolution;
+            } else if (batched >= direct) {
+                crossover = -1;
+            }
+        }
+
+        if (crossover < 0) {
+            System.out.printf("Batches of %d hits did not win at the measured resolutions\n", batchSize);
+        } else {
+            System.out.printf("Batches of %d hits win from %d x %d on\n", batchSize, crossover, crossover);
+        }
+    }
+
+    /**
+     * Renders the shark fin fractal and measures the time it took
+     *
+     * @param frame      limiting the area
+     * @param resolution edge length of the accumulator
+     * @param batchSize  of the builder, zero for direct application
+     * @param iterations to perform
+     * @return the time the render took in milliseconds
+     */
+    private static long time(final Rectangle frame, final int resolution, final int batchSize, final int iterations) {
+        final long start = System.nanoTime();
+
+        final FlameAccumulator.Builder builder = Flame.SHARKFIN.compute(iterations,
+                new FlameAccumulator.Builder(frame, resolution, resolution, batchSize));
+        builder.build().release();
+
+        final long time = (System.nanoTime() - start) / 1000000;
+        builder.release();
+
+        return time;
+    }
+}
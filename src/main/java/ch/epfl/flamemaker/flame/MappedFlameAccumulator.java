@@ -0,0 +1,413 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Point;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@code FlameAccumulator} keeping its fields off-heap, either in direct
+ * {@code ByteBuffers} or in a memory-mapped file. It offers the same contract as
+ * {@link FlameAccumulator}, but its size is bounded by the memory or the disk
+ * instead of the heap and the garbage collector never has to scan it.
+ * <p>
+ * Every field takes 12 bytes (the hit count followed by the sum of the color indexes),
+ * the fields are stored row by row in segments of whole rows of at most 2GB each
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ * @see FlameAccumulator
+ */
+public final class MappedFlameAccumulator implements Closeable {
+
+    /**
+     * Size of a field in bytes: an integer for the hit count and a double for the color index sum
+     */
+    private static final int FIELD_BYTES = 12;
+
+    /**
+     * Width of the {@code MappedFlameAccumulator}
+     */
+    private final int width;
+
+    /**
+     * Height of the {@code MappedFlameAccumulator}
+     */
+    private final int height;
+
+    /**
+     * Amount of rows stored in every segment
+     */
+    private final int rowsPerSegment;
+
+    /**
+     * Segments containing the fields
+     */
+    private final ByteBuffer[] segments;
+
+    /**
+     * Channel of the mapped file, {@code null} if the fields are kept in direct buffers
+     */
+    private final FileChannel channel;
+
+    /**
+     * The constant part of the formula to calculate the intensity
+     */
+    private final double intensity_formula;
+
+    /**
+     * Creates a new {@code MappedFlameAccumulator} taking over the segments of a builder
+     *
+     * @param width          of the accumulator
+     * @param height         of the accumulator
+     * @param rowsPerSegment amount of rows stored in every segment
+     * @param segments       containing the fields
+     * @param channel        of the mapped file, {@code null} if the segments are direct buffers
+     */
+    private MappedFlameAccumulator(final int width, final int height, final int rowsPerSegment,
+                                   final ByteBuffer[] segments, final FileChannel channel) {
+        this.width = width;
+        this.height = height;
+        this.rowsPerSegment = rowsPerSegment;
+        this.segments = segments;
+        this.channel = channel;
+
+        // Calculates the maximum hit count, segment by segment
+        int max = 0;
+        for (final ByteBuffer segment : segments) {
+            final int limit = segment.capacity();
+            for (int position = 0; position < limit; position += FIELD_BYTES) {
+                final int count = segment.getInt(position);
+                if (count > max) max = count;
+            }
+        }
+
+        // Calculates the value of intensity_formula
+        intensity_formula = Math.log(max + 1);
+    }
+
+    /**
+     * @return width of the {@code MappedFlameAccumulator}
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * @return height of the {@code MappedFlameAccumulator}
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @param x coordinate (field)
+     * @param y coordinate (field)
+     * @return the intensity of the specified field given a logarithmic formula
+     * @throws java.lang.IndexOutOfBoundsException if the coordinates are invalid
+     */
+    public double intensity(final int x, final int y) {
+        if (x < 0 || x >= width()
+                || y < 0 || y >= height()) {
+            throw new IndexOutOfBoundsException("Specified coordinates are invalid");
+        }
+
+        return Math.log(segments[y / rowsPerSegment].getInt(position(x, y)) + 1) / intensity_formula;
+    }
+
+    /**
+     * @param palette    the palette to use
+     * @param background background color
+     * @param x          coordinate (field)
+     * @param y          coordinate (field)
+     * @return the color for the specified field
+     * @throws java.lang.IndexOutOfBoundsException if the coordinates are invalid
+     */
+    public Color color(final Palette palette, final Color background, final int x, final int y) {
+        if (x < 0 || x >= width()
+                || y < 0 || y >= height()) {
+            throw new IndexOutOfBoundsException("Specified coordinates are invalid!");
+        }
+
+        final ByteBuffer segment = segments[y / rowsPerSegment];
+        final int position = position(x, y);
+        final int count = segment.getInt(position);
+
+        // Checks whether the field was hit or not
+        if (count != 0) {
+
+            // Divides the index by the hit count, since the index is a sum
+            return palette.colorForIndex(segment.getDouble(position + 4) / (double) count).
+                    mixWidth(background, 1 - Math.log(count + 1) / intensity_formula);
+        }
+
+        // If the field was not hit, return the background
+        return background;
+    }
+
+    /**
+     * Releases the mapped file. The mapping itself is released once it is garbage collected,
+     * the {@code MappedFlameAccumulator} must not be used anymore afterwards
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param x coordinate (field)
+     * @param y coordinate (field)
+     * @return the position of the field in its segment
+     */
+    private int position(final int x, final int y) {
+        return ((y % rowsPerSegment) * width + x) * FIELD_BYTES;
+    }
+
+    /**
+     * Builder for building a {@code MappedFlameAccumulator}. Building hands the
+     * fields over to the accumulator without copying them, the builder can not
+     * be hit anymore afterwards
+     *
+     * @author Groux Marcel Jean Jacques	227630
+     * @author Platzer Casimir Benjamin		228352
+     * @version 1.0
+     */
+    public static final class Builder implements HitAccumulator, Closeable {
+
+        /**
+         * Width of the grid
+         */
+        private final int width;
+
+        /**
+         * Height of the grid
+         */
+        private final int height;
+
+        /**
+         * Amount of rows stored in every segment
+         */
+        private final int rowsPerSegment;
+
+        /**
+         * Segments containing the fields
+         */
+        private final ByteBuffer[] segments;
+
+        /**
+         * Channel of the mapped file, {@code null} if the fields are kept in direct buffers
+         */
+        private final FileChannel channel;
+
+        /**
+         * {@code Rectangle} limiting the area
+         */
+        private final Rectangle frame;
+
+        /**
+         * {@code AffineTransformation} to transform Points in the method {@link #hit(Point, double)}
+         * so they are contained in the grid
+         */
+        private final AffineTransformation transformation;
+
+        /**
+         * Whether the fields were already handed over to a {@code MappedFlameAccumulator}
+         */
+        private boolean built = false;
+
+        /**
+         * Creates a new builder keeping the fields in direct {@code ByteBuffers}
+         *
+         * @param frame  limiting the area
+         * @param width  of the accumulator
+         * @param height of the accumulator
+         * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
+         */
+        public Builder(final Rectangle frame, final int width, final int height) {
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+            this.channel = null;
+
+            checkDimensions(width, height);
+            rowsPerSegment = rowsPerSegment(width, height);
+            segments = new ByteBuffer[(height - 1) / rowsPerSegment + 1];
+
+            for (int i = 0; i < segments.length; ++i) {
+                segments[i] = ByteBuffer.allocateDirect(segmentBytes(i))
+                        .order(ByteOrder.nativeOrder());
+            }
+
+            transformation = gridTransformation(frame, width, height);
+        }
+
+        /**
+         * Creates a new builder keeping the fields in the specified memory-mapped file.
+         * The file is created or truncated, since it starts out empty it only takes
+         * disk space for the pages which were actually hit on most file systems
+         *
+         * @param frame  limiting the area
+         * @param width  of the accumulator
+         * @param height of the accumulator
+         * @param file   to map the fields to
+         * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
+         * @throws IOException                        if the file could not be created or mapped
+         */
+        public Builder(final Rectangle frame, final int width, final int height, final Path file) throws IOException {
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+
+            checkDimensions(width, height);
+            rowsPerSegment = rowsPerSegment(width, height);
+            segments = new ByteBuffer[(height - 1) / rowsPerSegment + 1];
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long offset = 0;
+                for (int i = 0; i < segments.length; ++i) {
+                    final int bytes = segmentBytes(i);
+
+                    // Mapping beyond the end of the file grows it (filled with zeros)
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes)
+                            .order(ByteOrder.nativeOrder());
+                    offset += bytes;
+                }
+            } catch (final IOException exception) {
+                channel.close();
+                throw exception;
+            }
+
+            transformation = gridTransformation(frame, width, height);
+        }
+
+        /**
+         * Hits the frame containing the specified {@code Point}:
+         * <ul>
+         *  <li>Increments the value containing the amount of hits
+         * 	<li>Adds the color index to the field
+         * </ul>
+         *
+         * @param p          {@code Point}
+         * @param colorIndex of the {@code Point}
+         * @throws java.lang.IllegalStateException if the builder was already built
+         */
+        @Override
+        public void hit(Point p, final double colorIndex) {
+            if (built) {
+                throw new IllegalStateException("Builder was already built");
+            }
+
+            // Only calculate this if the unmodified frame contains the unmodified Point
+            if (frame.contains(p)) {
+                p = transformation.transformPoint(p);
+
+                // Since the coordinates should be positive, there's no need of Math.floor()
+                final int x = (int) p.x();
+                final int y = (int) p.y();
+
+                // Because of rounding, numbers still might get invalid
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    final ByteBuffer segment = segments[y / rowsPerSegment];
+                    final int position = ((y % rowsPerSegment) * width + x) * FIELD_BYTES;
+
+                    segment.putInt(position, segment.getInt(position) + 1);
+                    segment.putDouble(position + 4, segment.getDouble(position + 4) + colorIndex);
+                }
+            }
+        }
+
+        /**
+         * Builds the {@code MappedFlameAccumulator} and returns it. The fields are handed
+         * over to the accumulator, which is responsible for closing the file from now on
+         *
+         * @return the built {@code MappedFlameAccumulator}
+         * @throws java.lang.IllegalStateException if the builder was already built
+         */
+        public MappedFlameAccumulator build() {
+            if (built) {
+                throw new IllegalStateException("Builder was already built");
+            }
+
+            built = true;
+            return new MappedFlameAccumulator(width, height, rowsPerSegment, segments, channel);
+        }
+
+        /**
+         * Releases the mapped file if the builder was not built
+         *
+         * @throws IOException if the file could not be closed
+         */
+        @Override
+        public void close() throws IOException {
+            if (!built && channel != null) {
+                built = true;
+                channel.close();
+            }
+        }
+
+        /**
+         * @param segment index of the segment
+         * @return the size of the segment in bytes
+         */
+        private int segmentBytes(final int segment) {
+            final int rows = Math.min(rowsPerSegment, height - segment * rowsPerSegment);
+            return rows * width * FIELD_BYTES;
+        }
+
+        /**
+         * Checks whether the dimensions are valid (Throws an exception if invalid)
+         *
+         * @param width  of the accumulator
+         * @param height of the accumulator
+         * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
+         */
+        private static void checkDimensions(final int width, final int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Width and height must be greater than zero");
+            }
+            if ((long) width * FIELD_BYTES > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Width is too large");
+            }
+        }
+
+        /**
+         * @param width  of the accumulator
+         * @param height of the accumulator
+         * @return the amount of whole rows fitting into a segment of at most 2GB
+         */
+        private static int rowsPerSegment(final int width, final int height) {
+            return Math.min(height, Integer.MAX_VALUE / (width * FIELD_BYTES));
+        }
+
+        /**
+         * @param frame  limiting the area
+         * @param width  of the grid
+         * @param height of the grid
+         * @return the transformation of the frame onto the grid
+         */
+        private static AffineTransformation gridTransformation(final Rectangle frame, final int width, final int height) {
+            final double sX = (double) width / frame.width();
+            final double sY = (double) height / frame.height();
+
+            // Moves the lower-left corner of the frame to the origin and scales it to the size of the grid
+            return AffineTransformation.newTranslation(-frame.left(), -frame.bottom())
+                    .composeWith(AffineTransformation.newScaling(sX, sY));
+        }
+    }
+}
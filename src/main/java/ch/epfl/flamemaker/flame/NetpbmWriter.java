@@ -0,0 +1,413 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.color.PaletteTable;
+import ch.epfl.flamemaker.color.SRGBTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a {@code Flame} as binary Netpbm image, either in color (.ppm, P6) or in grayscale
+ * (.pgm, P5). The samples are sRGB-encoded up to a configurable maximal value, using one byte
+ * per sample up to 255 and two (most significant first) above.
+ * <p>
+ * The rows are written from the top to the bottom one: every {@code FlameAccumulator} written
+ * adds its rows below the ones before, so an image can be written band by band. The rows are
+ * encoded into a reusable {@code ByteBuffer}, which is written to a {@code FileChannel} whenever
+ * it is full. Large images can be encoded in parallel, either pipelined through a bounded ring of
+ * row buffers written in order or straight into the memory-mapped file
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class NetpbmWriter implements Closeable {
+
+    /**
+     * The kinds of images
+     */
+    public enum Format {
+        /**
+         * Color image (.ppm), three samples per pixel
+         */
+        PPM("P6", 3),
+
+        /**
+         * Grayscale image (.pgm), the luminance of the colors
+         */
+        PGM("P5", 1);
+
+        /**
+         * The magic number starting the file
+         */
+        private final String magicNumber;
+
+        /**
+         * Amount of samples per pixel
+         */
+        private final int channels;
+
+        /**
+         * @param magicNumber starting the file
+         * @param channels    amount of samples per pixel
+         */
+        Format(final String magicNumber, final int channels) {
+            this.magicNumber = magicNumber;
+            this.channels = channels;
+        }
+    }
+
+    /**
+     * The maximal value of the samples used if nothing else is specified
+     */
+    public static final int DEFAULT_MAX_VALUE = 255;
+
+    /**
+     * Amount of row buffers per thread when the rows are encoded in parallel
+     */
+    public static final int RING_ROWS_PER_THREAD = 4;
+
+    /**
+     * Minimal size of the buffer the rows are encoded into, in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The channel of the file
+     */
+    private final FileChannel channel;
+
+    /**
+     * Kind of the image
+     */
+    private final Format format;
+
+    /**
+     * Width of the image
+     */
+    private final int width;
+
+    /**
+     * Height of the image
+     */
+    private final int height;
+
+    /**
+     * The compiled {@code Palette} for painting the {@code Flame}
+     */
+    private final PaletteTable palette;
+
+    /**
+     * Background {@code Color}
+     */
+    private final Color background;
+
+    /**
+     * Maps the hit counts to intensities
+     */
+    private final ToneMap toneMap;
+
+    /**
+     * Encodes the components to samples
+     */
+    private final SRGBTable encoding;
+
+    /**
+     * Size of an encoded row, in bytes
+     */
+    private final int rowBytes;
+
+    /**
+     * The buffer the rows are encoded into
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Amount of rows written so far
+     */
+    private int rows = 0;
+
+    /**
+     * Creates a new {@code NetpbmWriter} with 8-bit samples and the default {@code ToneMap}
+     * and writes the header of the image
+     *
+     * @param file       to write to, replaced if it exists
+     * @param format     kind of the image
+     * @param width      of the image
+     * @param height     of the image
+     * @param palette    {@code Palette} for painting the {@code Flame}
+     * @param background {@code Color}
+     * @throws IOException if the file could not be written
+     */
+    public NetpbmWriter(final Path file, final Format format, final int width, final int height,
+                        final Palette palette, final Color background) throws IOException {
+        this(file, format, width, height, DEFAULT_MAX_VALUE, palette, background, ToneMap.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code NetpbmWriter} and writes the header of the image
+     *
+     * @param file       to write to, replaced if it exists
+     * @param format     kind of the image
+     * @param width      of the image
+     * @param height     of the image
+     * @param maxValue   the maximal value of the samples
+     * @param palette    {@code Palette} for painting the {@code Flame}
+     * @param background {@code Color}
+     * @param toneMap    mapping the hit counts to intensities
+     * @throws IOException                        if the file could not be written
+     * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero or
+     *                                            if the maximal value is not between 1 and 65535
+     */
+    public NetpbmWriter(final Path file, final Format format, final int width, final int height, final int maxValue,
+                        final Palette palette, final Color background, final ToneMap toneMap) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be greater than zero");
+        }
+
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.palette = palette.compile(PaletteTable.DEFAULT_RESOLUTION);
+        this.background = background;
+        this.toneMap = toneMap;
+        this.encoding = SRGBTable.forMaxValue(maxValue);
+
+        // As many whole rows as fit into the minimal size, at least one
+        rowBytes = format.channels * width * ((maxValue > 255) ? 2 : 1);
+        buffer = ByteBuffer.allocateDirect(Math.max(1, BUFFER_SIZE / rowBytes) * rowBytes);
+
+        // Also opened for reading, which mapping the file requires
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final String header = String.format("%s\n%d %d\n%d\n", format.magicNumber, width, height, maxValue);
+            writeFully(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+        } catch (final IOException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Writes an image to the specified file at once, with 8-bit samples and the default {@code ToneMap},
+     * encoding the rows on all the available processors
+     *
+     * @param accumulator containing the image
+     * @param file        to write to, replaced if it exists
+     * @param format      kind of the image
+     * @param palette     {@code Palette} for painting the {@code Flame}
+     * @param background  {@code Color}
+     * @throws IOException if the file could not be written
+     */
+    public static void write(final FlameAccumulator accumulator, final Path file, final Format format,
+                             final Palette palette, final Color background) throws IOException {
+        try (final NetpbmWriter writer = new NetpbmWriter(file, format, accumulator.width(), accumulator.height(),
+                palette, background)) {
+            writer.write(accumulator, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Writes all the rows of the accumulator, from the top to the bottom one, below the rows written before
+     *
+     * @param accumulator containing the rows, with the width of the image
+     * @throws IOException                        if the file could not be written
+     * @throws java.lang.IllegalArgumentException if the accumulator does not have the width of the image
+     *                                            or has more rows than remain to be written
+     */
+    public void write(final FlameAccumulator accumulator) throws IOException {
+        checkFits(accumulator);
+
+        final ToneMap.Intensities intensities = toneMap.intensities(accumulator);
+
+        for (int y = accumulator.height() - 1; y >= 0; --y) {
+            // Writes the buffer once the next row does not fit anymore
+            if (buffer.remaining() < rowBytes) {
+                flush();
+            }
+
+            encodeRow(accumulator, intensities, y, buffer);
+            ++rows;
+        }
+
+        flush();
+    }
+
+    /**
+     * Writes all the rows of the accumulator like {@link #write(FlameAccumulator)}, encoding them
+     * in parallel into a ring of {@link #RING_ROWS_PER_THREAD} row buffers per thread, which are
+     * written in order while the next rows are encoded
+     *
+     * @param accumulator containing the rows, with the width of the image
+     * @param threads     amount of threads encoding rows, one writing them sequentially
+     * @throws IOException                        if the file could not be written
+     * @throws java.lang.IllegalArgumentException if the accumulator does not have the width of the image
+     *                                            or has more rows than remain to be written, or if the
+     *                                            amount of threads is not greater than zero
+     */
+    public void write(final FlameAccumulator accumulator, final int threads) throws IOException {
+        checkThreads(threads);
+        if (threads == 1) {
+            write(accumulator);
+            return;
+        }
+        checkFits(accumulator);
+
+        final ToneMap.Intensities intensities = toneMap.intensities(accumulator);
+        final int top = accumulator.height() - 1;
+
+        RowPipeline.write(channel, accumulator.height(), rowBytes, threads, RING_ROWS_PER_THREAD * threads,
+                (row, out) -> encodeRow(accumulator, intensities, top - row, out));
+        rows += accumulator.height();
+    }
+
+    /**
+     * Writes all the rows of the accumulator like {@link #write(FlameAccumulator)}, the threads
+     * encoding the rows straight into the memory-mapped file at the offsets of the rows
+     *
+     * @param accumulator containing the rows, with the width of the image
+     * @param threads     amount of threads encoding rows
+     * @throws IOException                        if the file could not be mapped
+     * @throws java.lang.IllegalArgumentException if the accumulator does not have the width of the image
+     *                                            or has more rows than remain to be written, or if the
+     *                                            amount of threads is not greater than zero
+     */
+    public void writeMapped(final FlameAccumulator accumulator, final int threads) throws IOException {
+        checkThreads(threads);
+        checkFits(accumulator);
+
+        final ToneMap.Intensities intensities = toneMap.intensities(accumulator);
+        final int top = accumulator.height() - 1;
+
+        RowPipeline.writeMapped(channel, accumulator.height(), rowBytes, threads,
+                (row, out) -> encodeRow(accumulator, intensities, top - row, out));
+        rows += accumulator.height();
+    }
+
+    /**
+     * @param accumulator to write
+     * @throws java.lang.IllegalArgumentException if the accumulator does not have the width of the image
+     *                                            or has more rows than remain to be written
+     */
+    private void checkFits(final FlameAccumulator accumulator) {
+        if (accumulator.width() != width || accumulator.height() > height - rows) {
+            throw new IllegalArgumentException("Accumulator does not fit into the rest of the image");
+        }
+    }
+
+    /**
+     * @param threads amount of threads encoding rows
+     * @throws java.lang.IllegalArgumentException if the amount of threads is not greater than zero
+     */
+    private static void checkThreads(final int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Amount of threads must be greater than zero");
+        }
+    }
+
+    /**
+     * Encodes a row of the accumulator, may be called by several threads at once
+     *
+     * @param accumulator containing the row
+     * @param intensities of the hit counts of the accumulator
+     * @param y           index of the row in the accumulator
+     * @param out         to put the samples into
+     */
+    private void encodeRow(final FlameAccumulator accumulator, final ToneMap.Intensities intensities, final int y,
+                           final ByteBuffer out) {
+        final int[] hitCount = accumulator.hitCounts();
+        final double[] colorIndexSum = accumulator.colorIndexSums();
+        final boolean wide = encoding.maxValue() > 255;
+
+        for (int index = y * width; index < (y + 1) * width; ++index) {
+            final int count = hitCount[index];
+            double r = background.red();
+            double g = background.green();
+            double b = background.blue();
+
+            if (count != 0) {
+                final int entry = palette.entry(colorIndexSum[index] / count);
+
+                // The same mixing as Color.mixWidth()
+                final double proportion = 1 - intensities.intensity(count);
+                r = background.red() * proportion + (1.0 - proportion) * palette.red(entry);
+                g = background.green() * proportion + (1.0 - proportion) * palette.green(entry);
+                b = background.blue() * proportion + (1.0 - proportion) * palette.blue(entry);
+            }
+
+            if (format == Format.PPM) {
+                putSample(out, encoding.encode(r), wide);
+                putSample(out, encoding.encode(g), wide);
+                putSample(out, encoding.encode(b), wide);
+            } else {
+                // Relative luminance of the linear components
+                putSample(out, encoding.encode(Math.min(1.0, 0.2126 * r + 0.7152 * g + 0.0722 * b)), wide);
+            }
+        }
+    }
+
+    /**
+     * @return the amount of rows written so far
+     */
+    public int rowsWritten() {
+        return rows;
+    }
+
+    /**
+     * Closes the file
+     *
+     * @throws IOException if the file could not be closed or if not all the rows of the image were written
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+
+        if (rows < height) {
+            throw new IOException(String.format("Only %d of %d rows were written", rows, height));
+        }
+    }
+
+    /**
+     * @param out    to put the sample into
+     * @param sample to put
+     * @param wide   whether the sample takes two bytes
+     */
+    private static void putSample(final ByteBuffer out, final int sample, final boolean wide) {
+        if (wide) {
+            out.putShort((short) sample);
+        } else {
+            out.put((byte) sample);
+        }
+    }
+
+    /**
+     * Writes the content of the buffer and clears it
+     *
+     * @throws IOException if the file could not be written
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer to the channel
+     *
+     * @param bytes to write
+     * @throws IOException if the file could not be written
+     */
+    private void writeFully(final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.color.PaletteTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exports the fields of a {@code FlameAccumulator} without tone mapping as Portable Float Map
+ * (.pfm), for grading the colors in external tools. The floats are little-endian (scale -1.0)
+ * and the rows are written from the bottom to the top one, like the rows of the accumulator.
+ * <p>
+ * The fields are converted row by row into a buffer of about {@link #BUFFER_SIZE} bytes, which
+ * is written to a {@code FileChannel} whenever it is full, so only a few rows are kept in memory
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class PFMExporter {
+
+    /**
+     * The data exported for every field
+     */
+    public enum Mode {
+        /**
+         * The logarithmic intensity, between zero and 1.0 (grayscale)
+         */
+        LOG_DENSITY,
+
+        /**
+         * The average color index, zero for fields which were not hit (grayscale)
+         */
+        COLOR_INDEX,
+
+        /**
+         * The linear components of the color, the palette color mixed with the background
+         * according to the intensity, without sRGB encoding
+         */
+        LINEAR_RGB
+    }
+
+    /**
+     * Size of the buffer the rows are converted into, in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The compiled {@code Palette} for painting the {@code Flame}
+     */
+    private final PaletteTable palette;
+
+    /**
+     * Background {@code Color}
+     */
+    private final Color background;
+
+    /**
+     * Creates a new {@code PFMExporter}
+     *
+     * @param palette    {@code Palette} for painting the {@code Flame} (only used by {@link Mode#LINEAR_RGB})
+     * @param background {@code Color} of the fields which were not hit (only used by {@link Mode#LINEAR_RGB})
+     */
+    public PFMExporter(final Palette palette, final Color background) {
+        this.palette = palette.compile(PaletteTable.DEFAULT_RESOLUTION);
+        this.background = background;
+    }
+
+    /**
+     * Exports the accumulator to the specified file, replacing it if it exists
+     *
+     * @param accumulator to export
+     * @param mode        the data exported for every field
+     * @param file        to write to
+     * @throws IOException if the file could not be written
+     */
+    public void export(final FlameAccumulator accumulator, final Mode mode, final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            export(accumulator, mode, channel);
+        }
+    }
+
+    /**
+     * Exports the accumulator to the specified channel, starting at its current position
+     *
+     * @param accumulator to export
+     * @param mode        the data exported for every field
+     * @param channel     to write to
+     * @throws IOException if the channel could not be written
+     */
+    public void export(final FlameAccumulator accumulator, final Mode mode, final FileChannel channel)
+            throws IOException {
+        final int width = accumulator.width();
+        final int height = accumulator.height();
+        final int channels = (mode == Mode.LINEAR_RGB) ? 3 : 1;
+        final String header = String.format("%s\n%d %d\n-1.0\n", (channels == 3) ? "PF" : "Pf", width, height);
+
+        writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+
+        // At least one row per buffer, as many as fit otherwise
+        final int rowBytes = 4 * channels * width;
+        final int rowsPerBuffer = Math.max(1, BUFFER_SIZE / Math.max(1, rowBytes));
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(rowsPerBuffer * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+        final FloatBuffer floats = bytes.asFloatBuffer();
+        final float[] row = new float[channels * width];
+
+        final int[] hitCount = accumulator.hitCounts();
+        final double[] colorIndexSum = accumulator.colorIndexSums();
+        final ToneMap.Intensities intensities = ToneMap.DEFAULT.intensities(accumulator);
+
+        // The rows of the accumulator are already ordered from the bottom to the top
+        for (int y = 0; y < height; ++y) {
+            final int first = y * width;
+
+            for (int x = 0; x < width; ++x) {
+                final int count = hitCount[first + x];
+
+                switch (mode) {
+                    case LOG_DENSITY:
+                        row[x] = (count == 0) ? 0f : (float) intensities.intensity(count);
+                        break;
+                    case COLOR_INDEX:
+                        row[x] = (count == 0) ? 0f : (float) (colorIndexSum[first + x] / count);
+                        break;
+                    default:
+                        linearRGB(count, colorIndexSum[first + x], intensities, row, 3 * x);
+                }
+            }
+
+            floats.put(row);
+
+            // Writes the buffer once it is full or after the last row
+            if (!floats.hasRemaining() || y == height - 1) {
+                bytes.limit(4 * floats.position());
+                bytes.position(0);
+                writeFully(channel, bytes);
+                bytes.clear();
+                floats.clear();
+            }
+        }
+    }
+
+    /**
+     * Stores the linear components of the color of a field
+     *
+     * @param count         hit count of the field
+     * @param colorIndexSum sum of the color indexes of the field
+     * @param intensities   of the hit counts
+     * @param row           to store the components in
+     * @param index         of the red component in the row
+     */
+    private void linearRGB(final int count, final double colorIndexSum, final ToneMap.Intensities intensities,
+                           final float[] row, final int index) {
+        if (count == 0) {
+            row[index] = (float) background.red();
+            row[index + 1] = (float) background.green();
+            row[index + 2] = (float) background.blue();
+            return;
+        }
+
+        final int entry = palette.entry(colorIndexSum / count);
+
+        // The same mixing as Color.mixWidth()
+        final double proportion = 1 - intensities.intensity(count);
+        row[index] = (float) (background.red() * proportion + (1.0 - proportion) * palette.red(entry));
+        row[index + 1] = (float) (background.green() * proportion + (1.0 - proportion) * palette.green(entry));
+        row[index + 2] = (float) (background.blue() * proportion + (1.0 - proportion) * palette.blue(entry));
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer to the channel
+     *
+     * @param channel to write to
+     * @param buffer  to write
+     * @throws IOException if the channel could not be written
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a {@code FlameAccumulator} as PNG image (8-bit RGB) using only the {@code Deflater} of the JDK.
+ * <p>
+ * The rows are converted by a {@code FlameRasterizer} and divided into chunks of about
+ * {@link #CHUNK_SIZE} bytes, which are filtered (choosing the filter of every row adaptively) and
+ * compressed in parallel, like pigz does: every chunk is compressed on its own, using the last
+ * 32 KB of the chunk before as dictionary, and ends byte-aligned (a sync flush), so the compressed
+ * chunks simply put one after the other form a single zlib stream. At most a few chunks per thread
+ * are kept in memory, the chunks being written in order as soon as they are compressed
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class PNGWriter {
+
+    /**
+     * Uncompressed size of a chunk compressed on its own, in bytes
+     */
+    public static final int CHUNK_SIZE = 1 << 17;
+
+    /**
+     * Size of the window of deflate, the part of the chunk before used as dictionary
+     */
+    private static final int DICTIONARY_SIZE = 1 << 15;
+
+    /**
+     * Amount of chunks in progress per thread
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * The signature starting every PNG file
+     */
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * Converts the fields into pixels
+     */
+    private final FlameRasterizer rasterizer;
+
+    /**
+     * Compression level of the {@code Deflater}, from 0 to 9
+     */
+    private final int level;
+
+    /**
+     * Amount of threads filtering and compressing chunks
+     */
+    private final int threads;
+
+    /**
+     * Creates a new {@code PNGWriter} with the default {@code ToneMap} and compression level
+     *
+     * @param palette    {@code Palette} for painting the {@code Flame}
+     * @param background {@code Color}
+     * @param threads    amount of threads filtering and compressing chunks
+     * @throws java.lang.IllegalArgumentException if the amount of threads is not greater than zero
+     */
+    public PNGWriter(final Palette palette, final Color background, final int threads) {
+        this(new FlameRasterizer(palette, background), Deflater.DEFAULT_COMPRESSION, threads);
+    }
+
+    /**
+     * Creates a new {@code PNGWriter}
+     *
+     * @param rasterizer converting the fields into pixels
+     * @param level      compression level, from 0 to 9 or {@code Deflater.DEFAULT_COMPRESSION}
+     * @param threads    amount of threads filtering and compressing chunks
+     * @throws java.lang.IllegalArgumentException if the level is not valid or if the amount of threads
+     *                                            is not greater than zero
+     */
+    public PNGWriter(final FlameRasterizer rasterizer, final int level, final int threads) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Level must be between 0 and 9");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Amount of threads must be greater than zero");
+        }
+
+        this.rasterizer = rasterizer;
+        this.level = (level == Deflater.DEFAULT_COMPRESSION) ? 6 : level;
+        this.threads = threads;
+    }
+
+    /**
+     * Writes the whole accumulator to the specified file, replacing it if it exists
+     *
+     * @param accumulator to write
+     * @param file        to write to
+     * @throws IOException if the file could not be written
+     */
+    public void write(final FlameAccumulator accumulator, final Path file) throws IOException {
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(accumulator, 0, 0, accumulator.width(), accumulator.height(), out);
+        }
+    }
+
+    /**
+     * Writes an area of the accumulator to the specified stream, which is not closed
+     *
+     * @param accumulator to write
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @param stream      to write to
+     * @throws IOException                         if the stream could not be written
+     * @throws java.lang.IndexOutOfBoundsException if the area is not contained in the accumulator
+     * @throws java.lang.IllegalArgumentException  if the area is empty
+     */
+    public void write(final FlameAccumulator accumulator, final int left, final int top, final int width,
+                      final int height, final OutputStream stream) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be greater than zero");
+        }
+        if (left < 0 || top < 0 || left + width > accumulator.width() || top + height > accumulator.height()) {
+            throw new IndexOutOfBoundsException("Area is not contained in the accumulator");
+        }
+
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.write(SIGNATURE);
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        // 8 bits per sample, RGB, deflate, adaptive filtering, no interlacing
+        headerData.write(new byte[]{8, 2, 0, 0, 0});
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+        // The components are encoded as sRGB (perceptual rendering intent)
+        writeChunk(out, "sRGB", new byte[]{0}, 1);
+
+        writeImageData(accumulator, left, top, width, height, out);
+
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    /**
+     * Filters and compresses the chunks in parallel and writes them in order as IDAT chunks
+     *
+     * @param accumulator to write
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top
+     * @param width       of the area
+     * @param height      of the area
+     * @param out         to write to
+     * @throws IOException if the stream could not be written or a chunk could not be compressed
+     */
+    private void writeImageData(final FlameAccumulator accumulator, final int left, final int top,
+                                final int width, final int height, final DataOutputStream out) throws IOException {
+        final int rowBytes = 1 + 3 * width;
+        final int rowsPerChunk = Math.max(1, CHUNK_SIZE / rowBytes);
+        final int chunks = (height - 1) / rowsPerChunk + 1;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Deque<CompletableFuture<byte[]>> filtered = new ArrayDeque<>();
+        final Deque<CompletableFuture<byte[]>> compressed = new ArrayDeque<>();
+        final Adler32 adler = new Adler32();
+
+        try {
+            // The zlib header: deflate with a window of 32 KB, without preset dictionary
+            final int flags = (level < 2) ? 0 : (level < 6) ? 1 : (level == 6) ? 2 : 3;
+            final int header = (0x78 << 8) | (flags << 6);
+            final byte[] zlibHeader = {0x78, (byte) ((flags << 6) + (31 - header % 31) % 31)};
+            writeChunk(out, "IDAT", zlibHeader, zlibHeader.length);
+
+            CompletableFuture<byte[]> previous = null;
+            int submitted = 0;
+
+            for (int chunk = 0; chunk < chunks; ++chunk) {
+                // Keeps a bounded amount of chunks in progress
+                while (submitted < chunks && submitted < chunk + CHUNKS_PER_THREAD * threads) {
+                    final int firstRow = submitted * rowsPerChunk;
+                    final int rows = Math.min(rowsPerChunk, height - firstRow);
+                    final boolean last = submitted == chunks - 1;
+
+                    final CompletableFuture<byte[]> data = CompletableFuture.supplyAsync(
+                            () -> filter(accumulator, left, top, firstRow, width, rows), executor);
+                    final CompletableFuture<byte[]> deflated = (previous == null)
+                            ? data.thenApplyAsync(bytes -> compress(bytes, null, last), executor)
+                            : data.thenCombineAsync(previous, (bytes, before) -> compress(bytes, before, last), executor);
+
+                    filtered.addLast(data);
+                    compressed.addLast(deflated);
+                    previous = data;
+                    ++submitted;
+                }
+
+                final byte[] deflated = join(compressed.removeFirst());
+                adler.update(join(filtered.removeFirst()));
+                writeChunk(out, "IDAT", deflated, deflated.length);
+            }
+
+            final int checksum = (int) adler.getValue();
+            final byte[] trailer = {(byte) (checksum >>> 24), (byte) (checksum >>> 16),
+                    (byte) (checksum >>> 8), (byte) checksum};
+            writeChunk(out, "IDAT", trailer, trailer.length);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Converts the rows of a chunk into pixels and filters them
+     *
+     * @param accumulator to write
+     * @param left        first column of the area
+     * @param top         first row of the area, counted from the top of the accumulator
+     * @param firstRow    first row of the chunk, counted from the top of the area
+     * @param width       of the area
+     * @param rows        amount of rows of the chunk
+     * @return the filtered rows, each starting with its filter type
+     */
+    private byte[] filter(final FlameAccumulator accumulator, final int left, final int top, final int firstRow,
+                          final int width, final int rows) {
+        final int rowBytes = 3 * width;
+
+        // The row before the chunk is needed by the filters of the first row. Above the first row of
+        // the image it is zero, as for the decoder, even if the area does not start at the top
+        final int before = (firstRow > 0) ? 1 : 0;
+        final byte[] pixels = new byte[(rows + 1) * rowBytes];
+        rasterizer.toRGBBytes(accumulator, left, top + firstRow - before, width, rows + before,
+                pixels, (1 - before) * rowBytes, rowBytes);
+
+        final byte[] filtered = new byte[rows * (1 + rowBytes)];
+        final byte[] candidate = new byte[rowBytes];
+
+        for (int row = 0; row < rows; ++row) {
+            final int current = (row + 1) * rowBytes;
+            final int above = row * rowBytes;
+            final int target = row * (1 + rowBytes);
+
+            // Chooses the filter leaving the fewest non-zero bytes, the first one on equality. The usual sum
+            // of the absolute differences prefers smoothing filters, which turn the runs of background
+            // between the sparse hits into noise and compress far worse
+            int bestCost = Integer.MAX_VALUE;
+            for (int type = 0; type <= 4 && bestCost > 0; ++type) {
+                final int cost = applyFilter(type, pixels, current, above, rowBytes, candidate);
+
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    filtered[target] = (byte) type;
+                    System.arraycopy(candidate, 0, filtered, target + 1, rowBytes);
+                }
+            }
+        }
+
+        return filtered;
+    }
+
+    /**
+     * Applies a PNG filter to a row
+     *
+     * @param type     of the filter (none, sub, up, average or Paeth)
+     * @param pixels   the rows, three bytes per pixel
+     * @param current  index of the row to filter
+     * @param above    index of the row above
+     * @param rowBytes size of a row
+     * @param out      to store the filtered row in
+     * @return the amount of filtered bytes which are not zero
+     */
+    private static int applyFilter(final int type, final byte[] pixels, final int current, final int above,
+                                    final int rowBytes, final byte[] out) {
+        // The first pixel has no left neighbours, so the left predictors are zero
+        switch (type) {
+            case 0:
+                System.arraycopy(pixels, current, out, 0, rowBytes);
+                break;
+            case 1:
+                System.arraycopy(pixels, current, out, 0, 3);
+                for (int i = 3; i < rowBytes; ++i) {
+                    out[i] = (byte) (pixels[current + i] - pixels[current + i - 3]);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < rowBytes; ++i) {
+                    out[i] = (byte) (pixels[current + i] - pixels[above + i]);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < rowBytes; ++i) {
+                    final int a = (i >= 3) ? pixels[current + i - 3] & 0xFF : 0;
+                    out[i] = (byte) (pixels[current + i] - ((a + (pixels[above + i] & 0xFF)) >>> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < rowBytes; ++i) {
+                    final int a = (i >= 3) ? pixels[current + i - 3] & 0xFF : 0;
+                    final int c = (i >= 3) ? pixels[above + i - 3] & 0xFF : 0;
+                    out[i] = (byte) (pixels[current + i] - paeth(a, pixels[above + i] & 0xFF, c));
+                }
+        }
+
+        int cost = 0;
+        for (int i = 0; i < rowBytes; ++i) {
+            if (out[i] != 0) {
+                ++cost;
+            }
+        }
+
+        return cost;
+    }
+
+    /**
+     * @param a the byte on the left
+     * @param b the byte above
+     * @param c the byte above on the left
+     * @return the one of the three bytes closest to {@code a + b - c}
+     */
+    private static int paeth(final int a, final int b, final int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+
+        return (pb <= pc) ? b : c;
+    }
+
+    /**
+     * Compresses a chunk on its own, ending byte-aligned or with the final block
+     *
+     * @param data   the filtered rows of the chunk
+     * @param before the filtered rows of the chunk before, null for the first chunk
+     * @param last   whether the chunk is the last one
+     * @return the compressed chunk (raw deflate)
+     */
+    private byte[] compress(final byte[] data, final byte[] before, final boolean last) {
+        final Deflater deflater = new Deflater(level, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        final byte[] buffer = new byte[1 << 16];
+
+        try {
+            // The end of the chunk before, as the single stream would have it in its window
+            if (before != null) {
+                final int length = Math.min(DICTIONARY_SIZE, before.length);
+                deflater.setDictionary(before, before.length - length, length);
+            }
+
+            deflater.setInput(data);
+
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // A sync flush ends the chunk on a byte boundary without ending the stream
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, length);
+                } while (length == buffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @param future of a task filtering or compressing a chunk
+     * @return the result of the task
+     * @throws IOException if the task failed
+     */
+    private static byte[] join(final CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.join();
+        } catch (final CompletionException exception) {
+            throw new IOException("Could not compress image data", exception.getCause());
+        } catch (final CancellationException exception) {
+            throw new InterruptedIOException("Compression was cancelled");
+        }
+    }
+
+    /**
+     * Writes a PNG chunk: its length, type, data and CRC
+     *
+     * @param out    to write to
+     * @param type   of the chunk, four letters
+     * @param data   of the chunk
+     * @param length of the data
+     * @throws IOException if the stream could not be written
+     */
+    private static void writeChunk(final DataOutputStream out, final String type, final byte[] data,
+                                   final int length) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
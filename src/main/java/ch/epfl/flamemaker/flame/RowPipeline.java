@@ -0,0 +1,283 @@
+package ch.epfl.flamemaker.flame;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the rows of an image with a fixed amount of bytes per row to a {@code FileChannel},
+ * encoding them in parallel. Either the rows are encoded into a ring of row buffers and written
+ * in order by the calling thread, so the disk is busy while the next rows are encoded and at
+ * most as many rows as the ring holds are kept in memory, or the rows are encoded straight into
+ * the memory-mapped file at their offsets
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+final class RowPipeline {
+
+    /**
+     * Largest part of the file mapped at once, in bytes
+     */
+    private static final long MAX_MAPPING = 1L << 30;
+
+    /**
+     * Encodes the rows of an image
+     */
+    interface RowEncoder {
+
+        /**
+         * Encodes a row, putting exactly the bytes of one row into the buffer.
+         * Called by several threads at once for different rows
+         *
+         * @param row    index of the row, zero being the first one written
+         * @param buffer to put the bytes into, starting at its position
+         */
+        void encode(final int row, final ByteBuffer buffer);
+    }
+
+    /**
+     * Uninstantiable class
+     */
+    private RowPipeline() {
+    }
+
+    /**
+     * Encodes the rows in parallel into a ring of row buffers, writing them in order at the
+     * current position of the channel
+     *
+     * @param channel  to write to
+     * @param rows     amount of rows
+     * @param rowBytes size of a row, in bytes
+     * @param threads  amount of threads encoding rows
+     * @param ringSize amount of row buffers
+     * @param encoder  encoding the rows
+     * @throws IOException if the channel could not be written or a row could not be encoded
+     */
+    static void write(final FileChannel channel, final int rows, final int rowBytes, final int threads,
+                      final int ringSize, final RowEncoder encoder) throws IOException {
+        final ByteBuffer[] ring = new ByteBuffer[ringSize];
+        for (int i = 0; i < ringSize; ++i) {
+            ring[i] = ByteBuffer.allocateDirect(rowBytes);
+        }
+
+        final Ring state = new Ring(ringSize);
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            for (int t = 0; t < threads; ++t) {
+                executor.execute(() -> {
+                    try {
+                        // The rows are taken in order, so a row only waits for rows taken before
+                        for (int row = next.getAndIncrement(); row < rows; row = next.getAndIncrement()) {
+                            if (!state.awaitFree(row)) {
+                                return;
+                            }
+
+                            final ByteBuffer buffer = ring[row % ringSize];
+                            buffer.clear();
+                            encoder.encode(row, buffer);
+                            buffer.flip();
+
+                            state.encoded(row);
+                        }
+                    } catch (final RuntimeException | Error exception) {
+                        state.fail(exception);
+                    }
+                });
+            }
+
+            // Writes the rows in order, while the following ones are encoded
+            for (int row = 0; row < rows; ++row) {
+                state.awaitEncoded(row);
+
+                final ByteBuffer buffer = ring[row % ringSize];
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                state.written(row);
+            }
+        } catch (final IOException | RuntimeException exception) {
+            state.fail(exception);
+            throw exception;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Encodes the rows in parallel straight into the memory-mapped file, starting at the
+     * current position of the channel, which is moved behind the last row afterwards
+     *
+     * @param channel  to write to, opened for reading and writing
+     * @param rows     amount of rows
+     * @param rowBytes size of a row, in bytes
+     * @param threads  amount of threads encoding rows
+     * @param encoder  encoding the rows
+     * @throws IOException if the file could not be mapped or a row could not be encoded
+     */
+    static void writeMapped(final FileChannel channel, final int rows, final int rowBytes, final int threads,
+                            final RowEncoder encoder) throws IOException {
+        final long start = channel.position();
+        final int rowsPerMapping = (int) Math.max(1, MAX_MAPPING / rowBytes);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            for (int first = 0; first < rows; first += rowsPerMapping) {
+                final int firstRow = first;
+                final int count = Math.min(rowsPerMapping, rows - first);
+                final MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE,
+                        start + (long) first * rowBytes, (long) count * rowBytes);
+
+                final AtomicInteger next = new AtomicInteger();
+                final List<Future<?>> futures = new ArrayList<>();
+
+                for (int t = 0; t < threads; ++t) {
+                    futures.add(executor.submit(() -> {
+                        for (int row = next.getAndIncrement(); row < count; row = next.getAndIncrement()) {
+                            final ByteBuffer buffer = mapping.duplicate();
+                            buffer.position(row * rowBytes).limit((row + 1) * rowBytes);
+                            encoder.encode(firstRow + row, buffer.slice());
+                        }
+                    }));
+                }
+
+                // Waits until every thread is done with this part of the file
+                for (final Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (final InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while encoding rows");
+                    } catch (final ExecutionException exception) {
+                        throw new IOException("Could not encode row", exception.getCause());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        channel.position(start + (long) rows * rowBytes);
+    }
+
+    /**
+     * The state of a ring of row buffers, shared by the threads encoding rows and the one writing them
+     *
+     * @author Groux Marcel Jean Jacques	227630
+     * @author Platzer Casimir Benjamin		228352
+     * @version 1.0
+     */
+    private static final class Ring {
+
+        /**
+         * Amount of row buffers
+         */
+        private final int size;
+
+        /**
+         * The row encoded in every buffer, -1 if none
+         */
+        private final int[] encodedRows;
+
+        /**
+         * Amount of rows written so far
+         */
+        private int written = 0;
+
+        /**
+         * The exception which stopped the pipeline, null if none
+         */
+        private Throwable failure = null;
+
+        /**
+         * @param size amount of row buffers
+         */
+        private Ring(final int size) {
+            this.size = size;
+            this.encodedRows = new int[size];
+            Arrays.fill(encodedRows, -1);
+        }
+
+        /**
+         * Waits until the buffer of the row is free, the row of the last round being written
+         *
+         * @param row to encode
+         * @return whether the row may be encoded, false if the pipeline stopped
+         */
+        private synchronized boolean awaitFree(final int row) {
+            try {
+                while (written <= row - size && failure == null) {
+                    wait();
+                }
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            return failure == null;
+        }
+
+        /**
+         * @param row which was encoded into its buffer
+         */
+        private synchronized void encoded(final int row) {
+            encodedRows[row % size] = row;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the row was encoded into its buffer
+         *
+         * @param row to write
+         * @throws IOException if the pipeline stopped
+         */
+        private synchronized void awaitEncoded(final int row) throws IOException {
+            try {
+                while (encodedRows[row % size] != row && failure == null) {
+                    wait();
+                }
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding rows");
+            }
+
+            if (failure != null) {
+                throw new IOException("Could not encode row", failure);
+            }
+        }
+
+        /**
+         * @param row which was written, freeing its buffer
+         */
+        private synchronized void written(final int row) {
+            written = row + 1;
+            notifyAll();
+        }
+
+        /**
+         * Stops the pipeline
+         *
+         * @param exception which stopped the pipeline
+         */
+        private synchronized void fail(final Throwable exception) {
+            if (failure == null) {
+                failure = exception;
+            }
+            notifyAll();
+        }
+    }
+}
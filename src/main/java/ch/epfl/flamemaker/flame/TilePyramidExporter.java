@@ -0,0 +1,301 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Exports a {@code FlameAccumulator} as a Deep Zoom image (.dzi): a pyramid of levels, every level
+ * having half the width and height of the next one, each cut into square tiles. Level zero is a
+ * single field, the highest level has the size of the accumulator.
+ * <p>
+ * Every level is aggregated from the histogram of the level above using
+ * {@link FlameAccumulator#downsample(int, int)} (so each field sums up 2x2 fields) and tone-mapped
+ * on its own, instead of scaling down the image of the level above. PNG tiles are written by a
+ * {@link PNGWriter}, other formats through {@code ImageIO}. The tiles are rendered and
+ * written to disk in parallel as soon as their level is aggregated, and a level is released as
+ * soon as all its tiles are written, so besides the accumulator at most three levels (each a
+ * quarter of the one above) are kept at a time
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class TilePyramidExporter {
+
+    /**
+     * Converts the fields of the tiles into pixels
+     */
+    private final FlameRasterizer rasterizer;
+
+    /**
+     * Writes the tiles if their format is PNG, each tile on a single thread
+     * as the tiles are already written in parallel, null for other formats
+     */
+    private final PNGWriter pngWriter;
+
+    /**
+     * Edge length of the tiles
+     */
+    private final int tileSize;
+
+    /**
+     * Amount of fields a tile overlaps with its neighbours
+     */
+    private final int overlap;
+
+    /**
+     * Image format of the tiles (as known to {@code ImageIO})
+     */
+    private final String format;
+
+    /**
+     * Amount of threads rendering and writing tiles
+     */
+    private final int threads;
+
+    /**
+     * Creates a new {@code TilePyramidExporter}
+     *
+     * @param palette    {@code Palette} for painting the {@code Flame}
+     * @param background {@code Color}
+     * @param tileSize   edge length of the tiles
+     * @param overlap    amount of fields a tile overlaps with its neighbours
+     * @param format     image format of the tiles, e.g. "png" or "jpg"
+     * @param threads    amount of threads rendering and writing tiles
+     * @throws java.lang.IllegalArgumentException if the tile size or the amount of threads are not greater
+     *                                            than zero, if the overlap is negative or if the format is
+     *                                            not supported
+     */
+    public TilePyramidExporter(final Palette palette, final Color background, final int tileSize, final int overlap,
+                               final String format, final int threads) {
+        if (tileSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Tile size and amount of threads must be greater than zero");
+        }
+        if (overlap < 0) {
+            throw new IllegalArgumentException("Overlap must not be negative");
+        }
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+            throw new IllegalArgumentException("Unsupported image format: " + format);
+        }
+
+        this.rasterizer = new FlameRasterizer(palette, background);
+        this.pngWriter = format.equalsIgnoreCase("png")
+                ? new PNGWriter(rasterizer, Deflater.DEFAULT_COMPRESSION, 1)
+                : null;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * @param width  of the accumulator
+     * @param height of the accumulator
+     * @return the index of the highest level of the pyramid, the smallest level with at least the
+     * specified width and height
+     */
+    public static int maxLevel(final int width, final int height) {
+        final int size = Math.max(width, height);
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Exports the pyramid: the descriptor {@code name.dzi} and the tiles
+     * {@code name_files/level/column_row.format} in the specified directory
+     *
+     * @param accumulator containing the fields of the highest level, not released
+     * @param directory   to write to
+     * @param name        of the image
+     * @return the amount of tiles written
+     * @throws IOException if the pyramid could not be written
+     */
+    public int export(final FlameAccumulator accumulator, final Path directory, final String name)
+            throws IOException {
+        final Path tiles = directory.resolve(name + "_files");
+        final int maxLevel = maxLevel(accumulator.width(), accumulator.height());
+
+        writeDescriptor(directory.resolve(name + ".dzi"), accumulator.width(), accumulator.height());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int count = 0;
+
+        try {
+            FlameAccumulator level = accumulator;
+            List<Future<?>> pending = new ArrayList<>();
+            FlameAccumulator previous = null;
+
+            for (int index = maxLevel; index >= 0; --index) {
+                final Path levelDirectory = tiles.resolve(Integer.toString(index));
+                Files.createDirectories(levelDirectory);
+
+                // The tiles of this level are written while the next level is aggregated
+                final List<Future<?>> submitted = submitTiles(executor, level, levelDirectory);
+                count += submitted.size();
+
+                final FlameAccumulator next = (index > 0)
+                        ? level.downsample((level.width() + 1) / 2, (level.height() + 1) / 2)
+                        : null;
+
+                // The level before is not needed anymore once its tiles are written
+                awaitAll(pending);
+                if (previous != null && previous != accumulator) {
+                    previous.release();
+                }
+
+                pending = submitted;
+                previous = level;
+                level = next;
+            }
+
+            awaitAll(pending);
+            if (previous != null && previous != accumulator) {
+                previous.release();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes the XML descriptor of the pyramid
+     *
+     * @param file   to write to
+     * @param width  of the highest level
+     * @param height of the highest level
+     * @throws IOException if the descriptor could not be written
+     */
+    private void writeDescriptor(final Path file, final int width, final int height) throws IOException {
+        try (final PrintStream out = new PrintStream(Files.newOutputStream(file), false,
+                StandardCharsets.UTF_8.name())) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.printf("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"%s\" Overlap=\"%d\" TileSize=\"%d\">\n",
+                    format, overlap, tileSize);
+            out.printf("    <Size Width=\"%d\" Height=\"%d\"/>\n", width, height);
+            out.println("</Image>");
+
+            if (out.checkError()) {
+                throw new IOException("Could not write to " + file);
+            }
+        }
+    }
+
+    /**
+     * Submits the tasks rendering and writing the tiles of a level
+     *
+     * @param executor  to submit to
+     * @param level     {@code FlameAccumulator} of the level
+     * @param directory of the level
+     * @return the submitted tasks
+     */
+    private List<Future<?>> submitTiles(final ExecutorService executor, final FlameAccumulator level,
+                                        final Path directory) {
+        final List<Future<?>> futures = new ArrayList<>();
+        final int columns = (level.width() - 1) / tileSize + 1;
+        final int rows = (level.height() - 1) / tileSize + 1;
+
+        for (int row = 0; row < rows; ++row) {
+            for (int column = 0; column < columns; ++column) {
+                final Path file = directory.resolve(column + "_" + row + "." + format);
+                final int tileColumn = column;
+                final int tileRow = row;
+
+                futures.add(executor.submit(() -> {
+                    if (pngWriter != null) {
+                        writePNGTile(level, tileColumn, tileRow, file);
+                    } else if (!ImageIO.write(renderTile(level, tileColumn, tileRow), format, file.toFile())) {
+                        throw new IOException("No writer for image format " + format);
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        return futures;
+    }
+
+    /**
+     * Writes a tile including its overlap with the neighbouring tiles as PNG, without an image in between
+     *
+     * @param level  {@code FlameAccumulator} of the level
+     * @param column of the tile, zero being the left one
+     * @param row    of the tile, zero being the top one
+     * @param file   to write to
+     * @throws IOException if the tile could not be written
+     */
+    private void writePNGTile(final FlameAccumulator level, final int column, final int row, final Path file)
+            throws IOException {
+        final int left = Math.max(0, column * tileSize - overlap);
+        final int right = Math.min(level.width(), (column + 1) * tileSize + overlap);
+        final int top = Math.max(0, row * tileSize - overlap);
+        final int bottom = Math.min(level.height(), (row + 1) * tileSize + overlap);
+
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            pngWriter.write(level, left, top, right - left, bottom - top, out);
+        }
+    }
+
+    /**
+     * Renders a tile including its overlap with the neighbouring tiles
+     *
+     * @param level  {@code FlameAccumulator} of the level
+     * @param column of the tile, zero being the left one
+     * @param row    of the tile, zero being the top one
+     * @return the image of the tile
+     */
+    private BufferedImage renderTile(final FlameAccumulator level, final int column, final int row) {
+        // Tiles are counted from the top, like the areas of the rasterizer
+        final int left = Math.max(0, column * tileSize - overlap);
+        final int right = Math.min(level.width(), (column + 1) * tileSize + overlap);
+        final int top = Math.max(0, row * tileSize - overlap);
+        final int bottom = Math.min(level.height(), (row + 1) * tileSize + overlap);
+
+        final int width = right - left;
+        final int height = bottom - top;
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        rasterizer.toPackedRGB(level, left, top, width, height, pixels, 0, width);
+
+        return image;
+    }
+
+    /**
+     * Waits until all the specified tasks are done
+     *
+     * @param futures of the tasks writing tiles
+     * @throws IOException if a tile could not be written
+     */
+    private static void awaitAll(final List<Future<?>> futures) throws IOException {
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing tiles", exception);
+            } catch (final ExecutionException exception) {
+                throw new IOException("Could not write tile", exception.getCause());
+            }
+        }
+    }
+}
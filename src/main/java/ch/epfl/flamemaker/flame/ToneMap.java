@@ -0,0 +1,181 @@
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.color.SRGBTable;
+
+/**
+ * Maps the hit counts of a {@code FlameAccumulator} to intensities and linear components to
+ * 8-bit sRGB values, using precomputed tables instead of computing logarithms and powers.
+ * <p>
+ * The intensity of a field is the logarithmic one of {@link FlameAccumulator#intensity(int, int)},
+ * multiplied by the brightness (but at most 1.0) and raised to the power of {@code 1 / gamma}.
+ * As the hit counts repeat heavily, the intensities are computed once for every count up to
+ * {@link #TABLE_LIMIT} and looked up afterwards, the table being kept for the next accumulator with
+ * the same highest hit count. With the {@link #DEFAULT} parameters the intensities are exactly
+ * the ones of the accumulator
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class ToneMap {
+
+    /**
+     * The tone map with a gamma and a brightness of 1.0, leaving the intensities unchanged
+     */
+    public static final ToneMap DEFAULT = new ToneMap(1.0, 1.0);
+
+    /**
+     * Highest hit count whose intensity is stored in a table
+     */
+    public static final int TABLE_LIMIT = 1 << 16;
+
+    /**
+     * The encoding of linear components to 8-bit sRGB values
+     */
+    private static final SRGBTable SRGB = SRGBTable.forMaxValue(255);
+
+    /**
+     * Gamma the intensities are corrected with
+     */
+    private final double gamma;
+
+    /**
+     * Factor the intensities are multiplied with
+     */
+    private final double brightness;
+
+    /**
+     * The intensities of the last accumulator
+     */
+    private volatile Intensities last;
+
+    /**
+     * Creates a new {@code ToneMap}
+     *
+     * @param gamma      the intensities are corrected with, greater values brightening the faint fields
+     * @param brightness factor the intensities are multiplied with
+     * @throws java.lang.IllegalArgumentException if the gamma or the brightness are not greater than zero
+     */
+    public ToneMap(final double gamma, final double brightness) {
+        if (!(gamma > 0 && brightness > 0)) {
+            throw new IllegalArgumentException("Gamma and brightness must be greater than zero");
+        }
+
+        this.gamma = gamma;
+        this.brightness = brightness;
+    }
+
+    /**
+     * @return the gamma the intensities are corrected with
+     */
+    public double gamma() {
+        return gamma;
+    }
+
+    /**
+     * @return the factor the intensities are multiplied with
+     */
+    public double brightness() {
+        return brightness;
+    }
+
+    /**
+     * Returns the intensities of the hit counts of the specified accumulator,
+     * reusing the table of the last accumulator if it had the same highest hit count
+     *
+     * @param accumulator whose hit counts are mapped
+     * @return the intensities of the hit counts
+     */
+    public Intensities intensities(final FlameAccumulator accumulator) {
+        final Intensities intensities = last;
+        if (intensities != null && intensities.maxHitCount == accumulator.maxHitCount()
+                && intensities.countScale == accumulator.countScale()) {
+            return intensities;
+        }
+
+        return last = new Intensities(accumulator.maxHitCount(), accumulator.countScale());
+    }
+
+    /**
+     * @param component linear component of a {@code Color}, between zero and 1.0
+     * @return the same as {@code Color.sRGBEncode(component, 255)}, using an {@code SRGBTable}
+     */
+    public static int sRGBEncode(final double component) {
+        return SRGB.encode(component);
+    }
+
+    /**
+     * The intensities of the hit counts of accumulators with the same highest hit count
+     *
+     * @author Groux Marcel Jean Jacques	227630
+     * @author Platzer Casimir Benjamin		228352
+     * @version 1.0
+     */
+    public final class Intensities {
+
+        /**
+         * The highest hit count the intensities are relative to
+         */
+        private final int maxHitCount;
+
+        /**
+         * Amount a single hit counts
+         */
+        private final int countScale;
+
+        /**
+         * The constant part of the formula to calculate the intensity
+         */
+        private final double intensityFormula;
+
+        /**
+         * The intensity of every hit count up to the highest one or {@link #TABLE_LIMIT}
+         */
+        private final double[] table;
+
+        /**
+         * Computes the table of the intensities
+         *
+         * @param maxHitCount the highest hit count the intensities are relative to
+         * @param countScale  amount a single hit counts
+         */
+        private Intensities(final int maxHitCount, final int countScale) {
+            this.maxHitCount = maxHitCount;
+            this.countScale = countScale;
+            // The same as the one of FlameAccumulator
+            this.intensityFormula = Math.log((double) maxHitCount / countScale + 1);
+
+            table = new double[Math.min(maxHitCount, TABLE_LIMIT) + 1];
+            for (int count = 0; count < table.length; ++count) {
+                table[count] = compute(count);
+            }
+        }
+
+        /**
+         * @param count hit count of a field
+         * @return the intensity of the hit count, between zero and 1.0
+         */
+        public double intensity(final int count) {
+            return (count < table.length) ? table[count] : compute(count);
+        }
+
+        /**
+         * @param count hit count of a field
+         * @return the intensity of the hit count, computed without the table
+         */
+        private double compute(final int count) {
+            // Counts above the highest one are as intense as the highest one
+            double intensity = Math.min(1.0, Math.log((double) count / countScale + 1) / intensityFormula);
+
+            // Only corrected if needed, so the default intensities are exactly the ones of the accumulator
+            if (brightness != 1.0) {
+                intensity = Math.min(1.0, intensity * brightness);
+            }
+            if (gamma != 1.0) {
+                intensity = Math.pow(intensity, 1.0 / gamma);
+            }
+
+            return intensity;
+        }
+    }
+}
@@ -195,6 +195,22 @@ public final class AffineTransformation implements Transformation {
         return f;
     }
 
+    /**
+     * @return the determinant <i>ae - bd</i> of the linear part, the factor by which the
+     * transformation scales areas (negative if it mirrors them)
+     */
+    public double determinant() {
+        return a * e - b * d;
+    }
+
+    /**
+     * @return the coefficients <i>a, b, c, d, e, f</i> of the matrix, in this order
+     * @see #AffineTransformation(double, double, double, double, double, double)
+     */
+    public double[] coefficients() {
+        return new double[]{a, b, c, d, e, f};
+    }
+
     /**
      * Creates a composition of two affine transformations.
      * In other words: Simple matrix multiplication
@@ -3,6 +3,8 @@ package ch.epfl.flamemaker.gui;
 import ch.epfl.flamemaker.color.Color;
 import ch.epfl.flamemaker.color.Palette;
 import ch.epfl.flamemaker.flame.FlameAccumulator;
+import ch.epfl.flamemaker.flame.FlameRasterizer;
+import ch.epfl.flamemaker.flame.ToneMap;
 import ch.epfl.flamemaker.geometry2d.Point;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
 
@@ -14,6 +16,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  * Component for displaying a flame fractal
@@ -42,12 +45,22 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
     /**
      * Backgroundcolor for the display
      */
-    private final Color bgColor;
+    private Color bgColor;
 
     /**
      * {@code Palette} for painting the flame
      */
-    private final Palette palette;
+    private Palette palette;
+
+    /**
+     * {@code ToneMap} for the intensities of the flame
+     */
+    private ToneMap toneMap = ToneMap.DEFAULT;
+
+    /**
+     * Converts the flame into pixels, using the palette, the backgroundcolor and the tone map
+     */
+    private FlameRasterizer rasterizer;
 
     /**
      * {@code Rectangle} limiting the area
@@ -67,7 +80,12 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
     /**
      * An image containing the flame
      */
-    private Image image;
+    private BufferedImage image;
+
+    /**
+     * The last computed {@code FlameAccumulator}, kept for changing the colors without computing it again
+     */
+    private FlameAccumulator accumulator = null;
 
     /**
      * FlameAccumulator for the computer flame
@@ -103,6 +121,7 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
         this.builder = builder;
         this.bgColor = bgColor;
         this.palette = palette;
+        this.rasterizer = new FlameRasterizer(palette, bgColor, toneMap);
         this.rectangle = rectangle;
         this.density = density;
 
@@ -118,6 +137,42 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
         rectangleChanged = true;
     }
 
+    /**
+     * @param palette the new {@code Palette} for painting the flame, without computing it again
+     */
+    public void setPalette(final Palette palette) {
+        this.palette = palette;
+        restyle();
+    }
+
+    /**
+     * @param bgColor the new backgroundcolor, without computing the flame again
+     */
+    public void setBackgroundColor(final Color bgColor) {
+        this.bgColor = bgColor;
+        restyle();
+    }
+
+    /**
+     * @param toneMap the new {@code ToneMap} for the intensities, without computing the flame again
+     */
+    public void setToneMap(final ToneMap toneMap) {
+        this.toneMap = toneMap;
+        restyle();
+    }
+
+    /**
+     * Paints the last computed {@code FlameAccumulator} again using the current colors
+     */
+    private void restyle() {
+        rasterizer = new FlameRasterizer(palette, bgColor, toneMap);
+
+        if (accumulator != null) {
+            image = getAccumulatorImage(accumulator);
+        }
+        repaint();
+    }
+
     public void builderChanged(final boolean changed) {
         builderChanged = changed;
     }
@@ -155,14 +210,17 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
         }
 
         if (builderChanged) {
-            // Reset the FlameAccumulator.Builder
-            accBuilder = new FlameAccumulator.Builder(tmp, width, height);
-
             // If there's a calculation from before going on, stop it
             if (timer != null) {
                 timer.stop();
             }
 
+            // Reset the FlameAccumulator.Builder, returning the arrays of the previous one to the pool
+            if (accBuilder != null) {
+                accBuilder.release();
+            }
+            accBuilder = new FlameAccumulator.Builder(tmp, width, height);
+
             // Timer for iterative calculation
             timer = new Timer(0, new ActionListener() {
                 int count = 0;
@@ -174,7 +232,13 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
                     final int add = Math.min(m - count, STEP);
 
                     accBuilder = builder.build().compute(add, accBuilder);
-                    image = getAccumulatorImage(accBuilder.build());
+                    // Keeps the new accumulator for restyling, returning the arrays of the previous one to the pool
+                    final FlameAccumulator previous = accumulator;
+                    accumulator = accBuilder.build();
+                    image = getAccumulatorImage(accumulator);
+                    if (previous != null) {
+                        previous.release();
+                    }
 
                     count += add;
 
@@ -197,26 +261,25 @@ public final class FlameBuilderPreviewComponent extends JComponent implements Re
     }
 
     /**
-     * Creates an {@code Image} showing the content of the {@code FlameAccumulator}
+     * Creates an {@code Image} showing the content of the {@code FlameAccumulator},
+     * reusing the current image if it has the same size
      *
      * @param ac {@code FlameAccumulator} which content will be <i>"printed"</i> onto an {@code Image}
      * @return {@code Image} containing the {@code FlameAccumulator}s content
      */
-    private Image getAccumulatorImage(final FlameAccumulator ac) {
+    private BufferedImage getAccumulatorImage(final FlameAccumulator ac) {
         // Width and height of the accumulator
         final int width = ac.width();
         final int height = ac.height();
 
-        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage image = (this.image != null
+                && this.image.getWidth() == width && this.image.getHeight() == height)
+                ? this.image
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 
-        // Fills the image with the colors given by the accumulator
-        // (Also flips the image on the x-axis, since another coordinate system was used for the accumulator!)
-        for (int i = 0; i < width; ++i) {
-            for (int j = 0; j < height; ++j) {
-                image.setRGB(i, height - j - 1, ac.color(
-                        palette, bgColor, i, j).asPackedRGB());
-            }
-        }
+        // Fills the pixels of the image with the colors given by the accumulator
+        // (The rasterizer writes the top row first, flipping the coordinate system of the accumulator)
+        rasterizer.toPackedRGB(ac, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
 
         return image;
     }
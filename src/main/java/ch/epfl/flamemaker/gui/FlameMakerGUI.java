@@ -3,8 +3,10 @@ package ch.epfl.flamemaker.gui;
 import ch.epfl.flamemaker.color.Color;
 import ch.epfl.flamemaker.color.InterpolatedPalette;
 import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.color.RandomPalette;
 import ch.epfl.flamemaker.flame.Flame;
 import ch.epfl.flamemaker.flame.FlameTransformation;
+import ch.epfl.flamemaker.flame.ToneMap;
 import ch.epfl.flamemaker.flame.Variation;
 import ch.epfl.flamemaker.geometry2d.AffineTransformation;
 import ch.epfl.flamemaker.geometry2d.Point;
@@ -43,15 +45,27 @@ public final class FlameMakerGUI implements ResettableRectangle {
     /**
      * Backgroundcolor for the display
      */
-    private final Color bgColor = Color.BLACK;
+    private Color bgColor = Color.BLACK;
+
+    /**
+     * The palettes to choose from, by name
+     */
+    private static final String[] PALETTE_NAMES = {"Red, green, blue", "Fire", "Ice", "Random"};
 
     /**
      * {@code Palette} for painting the flame
      */
-    private final Palette palette = new InterpolatedPalette(
-            Color.RED,
-            Color.GREEN,
-            Color.BLUE);
+    private Palette palette = palette(PALETTE_NAMES[0]);
+
+    /**
+     * Gamma the intensities of the flame are corrected with
+     */
+    private double gamma = ToneMap.DEFAULT.gamma();
+
+    /**
+     * Factor the intensities of the flame are multiplied with
+     */
+    private double brightness = ToneMap.DEFAULT.brightness();
 
     /**
      * {@code Rectangle} limiting the area
@@ -217,6 +231,12 @@ public final class FlameMakerGUI implements ResettableRectangle {
         configureVariationGroupLayout(variationEditGroupLayout);
         transformationVariationEdit.setLayout(variationEditGroupLayout);
 
+        // Panel containing the components for changing the colors, which only paints the flame again
+        final JPanel colorsPanel = new JPanel();
+        colorsPanel.setLayout(new GridLayout(4, 2));
+        colorsPanel.setBorder(BorderFactory.createTitledBorder("Colors"));
+        configureColorsPanel(colorsPanel, frame, fractalPreviewComponent);
+
         // Adds all components to their associating panel
         frame.getContentPane().add(superPanel, BorderLayout.CENTER);
         superPanel.add(affinePreviewPanel);
@@ -232,6 +252,7 @@ public final class FlameMakerGUI implements ResettableRectangle {
         inferPanel.add(transformationEditPanel);
         transformationEditPanel.add(transformationAffineEdit);
         transformationEditPanel.add(transformationVariationEdit);
+        inferPanel.add(colorsPanel);
 
         // Sets the frame's current and minimum size to the preferred size, after everything was added it's set visibile
         frame.pack();
@@ -239,6 +260,74 @@ public final class FlameMakerGUI implements ResettableRectangle {
         frame.setVisible(true);
     }
 
+    /**
+     * Adds the components for choosing the palette, the backgroundcolor, the gamma and
+     * the brightness of the flame to the specified panel
+     *
+     * @param panel   to add the components to
+     * @param frame   owning the dialog for choosing the backgroundcolor
+     * @param preview component displaying the flame
+     */
+    private void configureColorsPanel(final JPanel panel, final JFrame frame,
+                                      final FlameBuilderPreviewComponent preview) {
+        // ComboBox for choosing the palette (A new random palette every time it is chosen)
+        final JComboBox<String> paletteChoice = new JComboBox<>(PALETTE_NAMES);
+        paletteChoice.addActionListener(e -> {
+            palette = palette((String) paletteChoice.getSelectedItem());
+            preview.setPalette(palette);
+        });
+
+        // Button opening a dialog for choosing the backgroundcolor
+        final JButton backgroundChoice = new JButton("Choose...");
+        backgroundChoice.addActionListener(e -> {
+            final java.awt.Color chosen = JColorChooser.showDialog(frame, "Background color",
+                    new java.awt.Color((float) bgColor.red(), (float) bgColor.green(), (float) bgColor.blue()));
+
+            if (chosen != null) {
+                bgColor = new Color(chosen.getRed() / 255.0, chosen.getGreen() / 255.0, chosen.getBlue() / 255.0);
+                preview.setBackgroundColor(bgColor);
+            }
+        });
+
+        // Sliders for the gamma (0.5 to 5.0) and the brightness (0.25 to 4.0), in hundredths
+        final JSlider gammaSlider = new JSlider(50, 500, (int) Math.round(gamma * 100));
+        final JSlider brightnessSlider = new JSlider(25, 400, (int) Math.round(brightness * 100));
+        gammaSlider.addChangeListener(e -> {
+            gamma = gammaSlider.getValue() / 100.0;
+            preview.setToneMap(new ToneMap(gamma, brightness));
+        });
+        brightnessSlider.addChangeListener(e -> {
+            brightness = brightnessSlider.getValue() / 100.0;
+            preview.setToneMap(new ToneMap(gamma, brightness));
+        });
+
+        panel.add(new JLabel("Palette"));
+        panel.add(paletteChoice);
+        panel.add(new JLabel("Background"));
+        panel.add(backgroundChoice);
+        panel.add(new JLabel("Gamma"));
+        panel.add(gammaSlider);
+        panel.add(new JLabel("Brightness"));
+        panel.add(brightnessSlider);
+    }
+
+    /**
+     * @param name of the {@code Palette}, one of {@link #PALETTE_NAMES}
+     * @return the {@code Palette} with the specified name
+     */
+    private static Palette palette(final String name) {
+        switch (name) {
+            case "Fire":
+                return new InterpolatedPalette(Color.RED, new Color(1.0, 0.5, 0.0), new Color(1.0, 1.0, 0.0), Color.WHITE);
+            case "Ice":
+                return new InterpolatedPalette(Color.BLUE, new Color(0.0, 1.0, 1.0), Color.WHITE);
+            case "Random":
+                return new RandomPalette(5);
+            default:
+                return new InterpolatedPalette(Color.RED, Color.GREEN, Color.BLUE);
+        }
+    }
+
     /**
      * Configures the GroupLayout specified and adds components for
      * editing the affine part of a {@code FlameTransformation}
@@ -0,0 +1,128 @@
+package ch.epfl.flamemaker.ifs;
+
+import java.util.Random;
+
+/**
+ * Chooses indexes with probabilities proportional to weights in constant time (Walker's alias
+ * method): an index is chosen uniformly and either kept or replaced by its alias, according to
+ * a probability computed once from the weights.
+ * <p>
+ * If all the weights are equal, an index is chosen with a single call of
+ * {@link Random#nextInt(int)}, so the same indexes are chosen as without weights
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+final class AliasTable {
+
+    /**
+     * Probability of keeping every index instead of choosing its alias
+     */
+    private final double[] probabilities;
+
+    /**
+     * The alias of every index
+     */
+    private final int[] aliases;
+
+    /**
+     * Whether all the weights are equal
+     */
+    private final boolean uniform;
+
+    /**
+     * Creates a new {@code AliasTable} for the specified weights
+     *
+     * @param weights of the indexes, not necessarily summing up to 1.0
+     * @throws java.lang.IllegalArgumentException if there are no weights, if a weight is negative
+     *                                            or not finite or if all the weights are zero
+     */
+    AliasTable(final double[] weights) {
+        final int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("At least one weight is required");
+        }
+
+        double sum = 0;
+        boolean uniform = true;
+        for (final double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and not negative");
+            }
+            sum += weight;
+            uniform &= (weight == weights[0]);
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("At least one weight must be greater than zero");
+        }
+
+        this.probabilities = new double[n];
+        this.aliases = new int[n];
+        this.uniform = uniform;
+
+        // Scaled so the average weight is 1.0, the indexes below give away space to the ones above
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < n; ++i) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        // Fills up every small index with one large index, which may become small itself
+        while (smallCount > 0 && largeCount > 0) {
+            final int less = small[--smallCount];
+            final int more = large[--largeCount];
+
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+
+            scaled[more] -= 1.0 - scaled[less];
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // The indexes left over are full, up to rounding errors
+        while (largeCount > 0) {
+            final int index = large[--largeCount];
+            probabilities[index] = 1.0;
+            aliases[index] = index;
+        }
+        while (smallCount > 0) {
+            final int index = small[--smallCount];
+            probabilities[index] = 1.0;
+            aliases[index] = index;
+        }
+    }
+
+    /**
+     * @return amount of indexes
+     */
+    int size() {
+        return probabilities.length;
+    }
+
+    /**
+     * @param random number generator
+     * @return a randomly chosen index, the probability of each being proportional to its weight
+     */
+    int sample(final Random random) {
+        final int index = random.nextInt(probabilities.length);
+        if (uniform) {
+            return index;
+        }
+
+        return (random.nextDouble() < probabilities[index]) ? index : aliases[index];
+    }
+}
@@ -8,6 +8,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A class representing an iterated function system
@@ -49,21 +53,122 @@ public final class IFS {
                     0.85, 0.04, 0,
                     -0.04, 0.85, 1.6)));
 
+    /**
+     * Amount of iterations after which the new fields are counted when stopping early
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Lowest weight used by {@link #withDeterminantWeights(double)} if nothing else is specified
+     */
+    public static final double DEFAULT_DETERMINANT_FLOOR = 0.01;
+
+    /**
+     * Odd constant (fractional part of the golden ratio) used for deriving the seeds of the threads
+     */
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Patience of a computation which never stops early
+     */
+    private static final long NO_EARLY_STOP = Long.MAX_VALUE;
+
     /**
      * A list containing all the affine transformations
      */
     private final List<AffineTransformation> transformations;
 
+    /**
+     * The weight of every affine transformation
+     */
+    private final double[] weights;
+
+    /**
+     * Chooses the affine transformations according to their weights
+     */
+    private final AliasTable selection;
+
     /**
      * Creates a new IFS taking a list of affine transformations
-     * as parameter
+     * as parameter, which are all chosen equally often
      *
      * @param transformations List of transformations
      */
     public IFS(final List<AffineTransformation> transformations) {
+        this(transformations, uniformWeights(transformations.size()));
+    }
+
+    /**
+     * Creates a new IFS taking a list of affine transformations and the weight of each,
+     * a transformation being chosen with a probability proportional to its weight
+     *
+     * @param transformations List of transformations
+     * @param weights         of the transformations, not necessarily summing up to 1.0
+     * @throws java.lang.IllegalArgumentException if the amount of weights differs from the amount of
+     *                                            transformations, if a weight is negative or if all
+     *                                            the weights are zero
+     */
+    public IFS(final List<AffineTransformation> transformations, final double[] weights) {
+        if (weights.length != transformations.size()) {
+            throw new IllegalArgumentException("Amount of weights must be the amount of transformations");
+        }
+
         this.transformations = new ArrayList<>();
 
         this.transformations.addAll(transformations);
+
+        this.weights = weights.clone();
+        this.selection = new AliasTable(weights);
+    }
+
+    /**
+     * @return a copy of the weights of the affine transformations
+     */
+    public double[] weights() {
+        return weights.clone();
+    }
+
+    /**
+     * Returns an IFS with the same affine transformations, each weighted by the absolute value of
+     * its determinant, which is the factor by which it scales areas. Every part of the fractal is
+     * then hit about equally often, instead of the parts of contracting transformations being hit
+     * far more often than necessary. Since transformations with a determinant of zero (like the
+     * stem of {@link #BARNSLEYS_FERN}) still have to be chosen, no weight is below the floor
+     *
+     * @param floor the lowest weight, relative to the sum of the absolute values of the determinants
+     * @return the weighted IFS
+     * @throws java.lang.IllegalArgumentException if the floor is not between zero and 1.0 or if all
+     *                                            determinants and the floor are zero
+     */
+    public IFS withDeterminantWeights(final double floor) {
+        if (!(floor >= 0 && floor <= 1)) {
+            throw new IllegalArgumentException("Floor must be between zero and 1.0");
+        }
+
+        final double[] determinants = new double[transformations.size()];
+        double sum = 0;
+        for (int i = 0; i < determinants.length; ++i) {
+            determinants[i] = Math.abs(transformations.get(i).determinant());
+            sum += determinants[i];
+        }
+
+        // Only the floor is left if every transformation collapses the plane
+        final double[] weights = new double[determinants.length];
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] = (sum == 0) ? floor : Math.max(determinants[i] / sum, floor);
+        }
+
+        return new IFS(transformations, weights);
+    }
+
+    /**
+     * @param count amount of transformations
+     * @return equal weights for the specified amount of transformations
+     */
+    private static double[] uniformWeights(final int count) {
+        final double[] weights = new double[count];
+        Arrays.fill(weights, 1.0);
+        return weights;
     }
 
     /**
@@ -79,28 +184,231 @@ public final class IFS {
      */
     public IFSAccumulator compute(final Rectangle frame, final int width, final int height, final int density) {
 
-        Point p = Point.ORIGIN;
-        final Random r = new Random();
-
         // Builder to create the IFS accumulator
         final IFSAccumulatorBuilder builder = new IFSAccumulatorBuilder(frame, width, height);
 
-        // Number of iterations to perform
-        final int m = density * height * width;
+        iterate(new Random(), (long) density * height * width, NO_EARLY_STOP, builder);
+
+        // Builds the IFS accumulator and returns it
+        return builder.build();
+    }
+
+    /**
+     * Computes the fractal like {@link #compute(Rectangle, int, int, int)}, but the transformations
+     * are chosen by a random number generator with the specified seed. Computing the fractal twice
+     * with the same seed leads to exactly the same {@code IFSAccumulator}
+     *
+     * @param frame   limiting the area
+     * @param width   of the accumulator
+     * @param height  of the accumulator
+     * @param density : iterations per field
+     * @param seed    of the random number generator
+     * @return IFSAccumulator with specified width and height containing the specified fractal
+     */
+    public IFSAccumulator compute(final Rectangle frame, final int width, final int height, final int density,
+                                  final long seed) {
+        return compute(frame, width, height, density, seed, 1);
+    }
+
+    /**
+     * Computes the fractal on several threads: the iterations are divided among the threads, each
+     * following its own point with its own random number generator into its own accumulator, and
+     * the fields hit by any thread are hit on the result. The seed of the first thread is the
+     * specified one, so a single thread leads to the same result as
+     * {@link #compute(Rectangle, int, int, int, long)}, and computing the fractal twice with the
+     * same seed and amount of threads leads to exactly the same {@code IFSAccumulator}
+     *
+     * @param frame   limiting the area
+     * @param width   of the accumulator
+     * @param height  of the accumulator
+     * @param density : iterations per field
+     * @param seed    of the random number generators
+     * @param threads amount of threads computing the fractal
+     * @return IFSAccumulator with specified width and height containing the specified fractal
+     * @throws java.lang.IllegalArgumentException if the amount of threads is not greater than zero
+     * @throws java.lang.IllegalStateException    if the thread was interrupted while waiting for the others
+     */
+    public IFSAccumulator compute(final Rectangle frame, final int width, final int height, final int density,
+                                  final long seed, final int threads) {
+        return compute(frame, width, height, density, seed, threads, NO_EARLY_STOP);
+    }
+
+    /**
+     * Computes the fractal like {@link #compute(Rectangle, int, int, int, long, int)}, but every
+     * thread stops as soon as its last iterations did not hit any new field, since an iteration
+     * only hitting fields which are already hit does not change the result. The iterations are
+     * done in blocks of {@link #BLOCK_SIZE}, a thread stopping once the blocks without any new
+     * field make up at least the specified amount of iterations. The achieved coverage is
+     * {@link IFSAccumulator#coverage()} of the result
+     *
+     * @param frame      limiting the area
+     * @param width      of the accumulator
+     * @param height     of the accumulator
+     * @param maxDensity : iterations per field if the threads never stop early
+     * @param seed       of the random number generators
+     * @param threads    amount of threads computing the fractal
+     * @param patience   amount of iterations in a row without any new field after which a thread stops
+     * @return IFSAccumulator with specified width and height containing the specified fractal
+     * @throws java.lang.IllegalArgumentException if the amount of threads or the patience is not
+     *                                            greater than zero
+     * @throws java.lang.IllegalStateException    if the thread was interrupted while waiting for the others
+     */
+    public IFSAccumulator computeUntilSaturated(final Rectangle frame, final int width, final int height,
+                                                final int maxDensity, final long seed, final int threads,
+                                                final long patience) {
+        if (patience <= 0) {
+            throw new IllegalArgumentException("Patience must be greater than zero");
+        }
+
+        return compute(frame, width, height, maxDensity, seed, threads, patience);
+    }
+
+    /**
+     * Computes a cover of the fractal without randomness, by applying every transformation to the
+     * whole of every field hit so far until no new field is hit, starting with the fields
+     * containing the fixed points of the transformations. Every field containing a point of the
+     * fractal is hit, but so are some fields the fractal merely comes close to, so the result is
+     * thicker than the one of the chaos algorithm. It only depends on the grid, and every field is
+     * visited once per transformation, so it is usually far less work than the chaos algorithm at
+     * a density high enough to hit every field. The frame has to contain the whole fractal, since
+     * parts leading out of the frame are not followed
+     *
+     * @param frame  limiting the area
+     * @param width  of the accumulator
+     * @param height of the accumulator
+     * @return IFSAccumulator with specified width and height containing a cover of the fractal
+     * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
+     */
+    public IFSAccumulator computeBySetIteration(final Rectangle frame, final int width, final int height) {
+        return new SetIteration(transformations, frame, width, height).compute();
+    }
+
+    /**
+     * Computes the fractal on several threads
+     *
+     * @param frame    limiting the area
+     * @param width    of the accumulator
+     * @param height   of the accumulator
+     * @param density  : iterations per field
+     * @param seed     of the random number generators
+     * @param threads  amount of threads computing the fractal
+     * @param patience amount of iterations in a row without any new field after which a thread stops
+     * @return IFSAccumulator with specified width and height containing the specified fractal
+     * @throws java.lang.IllegalArgumentException if the amount of threads is not greater than zero
+     * @throws java.lang.IllegalStateException    if the thread was interrupted while waiting for the others
+     */
+    private IFSAccumulator compute(final Rectangle frame, final int width, final int height, final int density,
+                                   final long seed, final int threads, final long patience) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Amount of threads must be greater than zero");
+        }
+
+        final long iterations = (long) density * height * width;
+        final IFSAccumulatorBuilder builder = new IFSAccumulatorBuilder(frame, width, height);
+
+        if (threads == 1) {
+            iterate(new Random(seed), iterations, patience, builder);
+            return builder.build();
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads - 1);
+        try {
+            // The other threads start first, the calling thread computes the first part itself
+            final List<Future<IFSAccumulator>> futures = new ArrayList<>();
+            for (int thread = 1; thread < threads; ++thread) {
+                final long partSeed = seed + thread * SEED_INCREMENT;
+                final long partIterations = partIterations(iterations, thread, threads);
+
+                futures.add(executor.submit(() -> {
+                    final IFSAccumulatorBuilder part = new IFSAccumulatorBuilder(frame, width, height);
+                    iterate(new Random(partSeed), partIterations, patience, part);
+                    return part.build();
+                }));
+            }
+
+            iterate(new Random(seed), partIterations(iterations, 0, threads), patience, builder);
+
+            for (final Future<IFSAccumulator> future : futures) {
+                builder.hitAll(await(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Applies randomly chosen transformations to a point starting at the origin and hits the
+     * resulting points, stopping early once the blocks without any new field make up the patience
+     *
+     * @param random     number generator for choosing the transformations
+     * @param iterations amount of points to hit
+     * @param patience   amount of iterations in a row without any new field after which to stop
+     * @param builder    to hit the points on
+     */
+    private void iterate(final Random random, final long iterations, final long patience,
+                         final IFSAccumulatorBuilder builder) {
+        Point p = Point.ORIGIN;
 
         // First twenty iterations to make sure first point hitting is not necessarily in the center
         for (int i = 0; i < 20; ++i)
             // Transforms the point with the affine transformation
-            p = transformations.get(r.nextInt(transformations.size())).transformPoint(p);
+            p = transformations.get(selection.sample(random)).transformPoint(p);
+
+        long hitCount = builder.hitCount();
+        long stalled = 0;
+
+        for (long done = 0; done < iterations; ) {
+            final long block = Math.min(BLOCK_SIZE, iterations - done);
+
+            for (long i = 0; i < block; ++i) {
+                p = transformations.get(selection.sample(random)).transformPoint(p);
 
-        for (int i = 0; i < m; ++i) {
-            p = transformations.get(r.nextInt(transformations.size())).transformPoint(p);
+                // Hits the point on the accumulator
+                builder.hit(p);
+            }
+            done += block;
 
-            // Hits the point on the accumulator
-            builder.hit(p);
+            // Counting the new fields per block keeps the check out of the loop above
+            if (builder.hitCount() > hitCount) {
+                hitCount = builder.hitCount();
+                stalled = 0;
+            } else if ((stalled += block) >= patience) {
+                return;
+            }
         }
+    }
 
-        // Builds the IFS accumulator and returns it
-        return builder.build();
+    /**
+     * @param iterations amount of iterations of all threads
+     * @param thread     index of the thread
+     * @param threads    amount of threads
+     * @return the amount of iterations of the specified thread, the remainder being divided
+     * among the first threads
+     */
+    private static long partIterations(final long iterations, final int thread, final int threads) {
+        return iterations / threads + ((thread < iterations % threads) ? 1 : 0);
+    }
+
+    /**
+     * Waits until a thread is done
+     *
+     * @param future of the thread
+     * @return the accumulator computed by the thread
+     * @throws java.lang.IllegalStateException if the thread was interrupted while waiting
+     */
+    private static IFSAccumulator await(final Future<IFSAccumulator> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the fractal", exception);
+        } catch (final ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw (Error) exception.getCause();
+        }
     }
 }
@@ -1,9 +1,13 @@
 package ch.epfl.flamemaker.ifs;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 /**
  * An IFSAccumulator which contains the fractal
+ * <p>
+ * The fields are stored as bits of a {@code long}-array, row by row starting with the bottom
+ * one. Every row starts with a new {@code long}, the field <i>x</i> being the bit <i>x % 64</i>
+ * of the {@code long} <i>x / 64</i> of the row
  *
  * @author Groux Marcel Jean Jacques	227630
  * @author Platzer Casimir Benjamin		228352
@@ -12,9 +16,24 @@ import java.util.Arrays;
 public final class IFSAccumulator {
 
     /**
-     * Array of the grid containing whether a field is hit or not
+     * Width of the accumulator
      */
-    private final boolean[][] isHit;
+    private final int width;
+
+    /**
+     * Height of the accumulator
+     */
+    private final int height;
+
+    /**
+     * Amount of {@code longs} per row
+     */
+    private final int wordsPerRow;
+
+    /**
+     * Bits of the grid containing whether a field is hit or not
+     */
+    private final long[] words;
 
     /**
      * Creates a new IFSAccumulator given a 2D-array containing
@@ -23,30 +42,60 @@ public final class IFSAccumulator {
      * @param isHit boolean-array whether fields are hit or not
      */
     public IFSAccumulator(final boolean[][] isHit) {
+        this(isHit.length, isHit[0].length, new long[wordCount(isHit.length, isHit[0].length)]);
+
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                if (isHit[x][y]) {
+                    words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
 
-        // Deep copy of array
-        final int length = isHit.length;
+    /**
+     * Creates a new IFSAccumulator using the specified bits without copying them
+     *
+     * @param width  of the accumulator
+     * @param height of the accumulator
+     * @param words  bits of the fields, laid out as described above
+     */
+    IFSAccumulator(final int width, final int height, final long[] words) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = wordsPerRow(width);
+        this.words = words;
+    }
 
-        this.isHit = new boolean[length][];
+    /**
+     * @param width of the accumulator
+     * @return amount of {@code longs} per row
+     */
+    static int wordsPerRow(final int width) {
+        return (width + 63) >>> 6;
+    }
 
-        // Since isHit is an array of arrays, it is necessary to copy all these "sub-arrays"
-        for (int i = 0; i < length; ++i) {
-            this.isHit[i] = Arrays.copyOf(isHit[i], isHit[i].length);
-        }
+    /**
+     * @param width  of the accumulator
+     * @param height of the accumulator
+     * @return amount of {@code longs} storing the fields
+     */
+    static int wordCount(final int width, final int height) {
+        return wordsPerRow(width) * height;
     }
 
     /**
      * @return width of the accumulator
      */
     public int width() {
-        return isHit.length;
+        return width;
     }
 
     /**
      * @return height of the accumulator
      */
     public int height() {
-        return isHit[0].length;
+        return height;
     }
 
     /**
@@ -60,6 +109,61 @@ public final class IFSAccumulator {
             throw new IndexOutOfBoundsException("Specified coordinates are invalid");
         }
 
-        return isHit[x][y];
+        // Shifting a long only uses the lowest six bits of the distance
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * @return the bits of the fields, not copied
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * @return amount of fields which are hit
+     */
+    public long hitCount() {
+        long count = 0;
+        for (final long word : words) {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the proportion of fields which are hit, between zero and 1.0
+     */
+    public double coverage() {
+        return (double) hitCount() / ((long) width * height);
+    }
+
+    /**
+     * Puts a row packed eight fields per byte, the leftmost field in the most significant bit
+     * and the last byte padded with zeros, as in binary PBM images
+     *
+     * @param y   coordinate of the row, zero being the bottom one
+     * @param out buffer to put the {@code (width() + 7) / 8} bytes into
+     */
+    void packRow(final int y, final ByteBuffer out) {
+        final int first = y * wordsPerRow;
+        int bytes = (width + 7) >>> 3;
+
+        for (int i = 0; i < wordsPerRow; ++i, bytes -= 8) {
+            // Reversing the bits puts the leftmost field in the most significant bit
+            final long word = Long.reverse(words[first + i]);
+
+            if (bytes >= 8) {
+                out.put((byte) (word >>> 56)).put((byte) (word >>> 48))
+                        .put((byte) (word >>> 40)).put((byte) (word >>> 32))
+                        .put((byte) (word >>> 24)).put((byte) (word >>> 16))
+                        .put((byte) (word >>> 8)).put((byte) word);
+            } else {
+                for (int b = 0; b < bytes; ++b) {
+                    out.put((byte) (word >>> (56 - 8 * b)));
+                }
+            }
+        }
     }
 }
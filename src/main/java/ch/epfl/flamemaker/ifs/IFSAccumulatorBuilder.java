@@ -14,9 +14,35 @@ import ch.epfl.flamemaker.geometry2d.Rectangle;
 public final class IFSAccumulatorBuilder {
 
     /**
-     * Array of the grid containing whether a field was hit or not
+     * Width of the accumulator
      */
-    private final boolean[][] isHit;
+    private final int width;
+
+    /**
+     * Height of the accumulator
+     */
+    private final int height;
+
+    /**
+     * Amount of {@code longs} per row
+     */
+    private final int wordsPerRow;
+
+    /**
+     * Bits of the grid containing whether a field was hit or not, laid out like in {@link IFSAccumulator}
+     */
+    private long[] words;
+
+    /**
+     * Whether the bits were handed over to an accumulator by {@link #build()}, so they have to
+     * be copied before a field is hit
+     */
+    private boolean shared = false;
+
+    /**
+     * Amount of fields hit so far
+     */
+    private long hitCount = 0;
 
     /**
      * Frame limiting the area
@@ -25,7 +51,7 @@ public final class IFSAccumulatorBuilder {
 
     /**
      * Affine transformation to transform Points in the method {@link #hit(Point)}
-     * so they are contained in the specified array {@link #isHit}
+     * so they are contained in the grid {@link #words}
      */
     private final AffineTransformation affineTransformation;
 
@@ -44,7 +70,10 @@ public final class IFSAccumulatorBuilder {
 
         this.frame = frame;
 
-        isHit = new boolean[width][height];
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = IFSAccumulator.wordsPerRow(width);
+        this.words = new long[IFSAccumulator.wordCount(width, height)];
 
         double sX = (double) width / frame.width();
         double sY = (double) height / frame.height();
@@ -77,16 +106,64 @@ public final class IFSAccumulatorBuilder {
             final Point transformedPoint = affineTransformation.transformPoint(point);
 
             // Since the coordinates are positive, there's no need of Math.floor()
-            isHit[(int) transformedPoint.x()][(int) transformedPoint.y()] = true;
+            final int x = (int) transformedPoint.x();
+            final int y = (int) transformedPoint.y();
+
+            // Shifting a long only uses the lowest six bits of the distance
+            final int index = y * wordsPerRow + (x >>> 6);
+            final long bit = 1L << x;
+
+            if ((words[index] & bit) == 0) {
+                if (shared) {
+                    words = words.clone();
+                    shared = false;
+                }
+
+                words[index] |= bit;
+                ++hitCount;
+            }
+        }
+    }
+
+    /**
+     * @return amount of fields hit so far
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Hits every field which is hit on the specified accumulator
+     *
+     * @param accumulator of the same size
+     * @throws java.lang.IllegalArgumentException if the accumulator does not have the same size
+     */
+    void hitAll(final IFSAccumulator accumulator) {
+        if (accumulator.width() != width || accumulator.height() != height) {
+            throw new IllegalArgumentException("Accumulator must have the same size");
+        }
+
+        if (shared) {
+            words = words.clone();
+            shared = false;
+        }
+
+        final long[] other = accumulator.words();
+        hitCount = 0;
+        for (int i = 0; i < words.length; ++i) {
+            words[i] |= other[i];
+            hitCount += Long.bitCount(words[i]);
         }
     }
 
     /**
-     * Builds the IFSAccumulator and returns it
+     * Builds the IFSAccumulator and returns it. The bits are not copied, unless a field is hit
+     * afterwards
      *
      * @return the built accumulator
      */
     public IFSAccumulator build() {
-        return new IFSAccumulator(isHit);
+        shared = true;
+        return new IFSAccumulator(width, height, words);
     }
 }
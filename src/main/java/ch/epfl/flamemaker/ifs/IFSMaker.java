@@ -3,14 +3,16 @@ package ch.epfl.flamemaker.ifs;
 import ch.epfl.flamemaker.geometry2d.Point;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
 
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 public final class IFSMaker {
 
     private final static int SIERPINSKY_TRIANGLE = 0;
     private final static int BARNSLEYS_FERN = 1;
 
+    private final static long SEED = 2014L;
+
     public static void main(final String[] arguments) {
         genFractal(SIERPINSKY_TRIANGLE);
         genFractal(BARNSLEYS_FERN);
@@ -25,7 +27,7 @@ public final class IFSMaker {
                 final Rectangle rectangle = new Rectangle(new Point(0.5, 0.5), 1, 1);
 
                 System.out.println("Computing image sierpinsky_triangle ...");
-                final IFSAccumulator ifsAccumulator = IFS.SIERPINSKY_TRIANGLE.compute(rectangle, width, height, 1);
+                final IFSAccumulator ifsAccumulator = IFS.SIERPINSKY_TRIANGLE.computeBySetIteration(rectangle, width, height);
 
                 System.out.println("Saving image sierpinsky_triangle ...");
                 writeImage(ifsAccumulator, "sierpinsky_triangle");
@@ -38,7 +40,10 @@ public final class IFSMaker {
                 final Rectangle rectangle = new Rectangle(new Point(0.0, 4.5), 6, 10);
 
                 System.out.println("Computing image barnsleys_fern ...");
-                final IFSAccumulator ifsAccumulator = IFS.BARNSLEYS_FERN.compute(rectangle, width, height, 150);
+                final IFS fern = IFS.BARNSLEYS_FERN.withDeterminantWeights(IFS.DEFAULT_DETERMINANT_FLOOR);
+                final IFSAccumulator ifsAccumulator = fern.computeUntilSaturated(rectangle, width, height, 150,
+                        SEED, Runtime.getRuntime().availableProcessors(), 1 << 20);
+                System.out.printf("Coverage of barnsleys_fern: %.2f%%\n", 100 * ifsAccumulator.coverage());
 
                 System.out.println("Saving image barnsleys_fern ...");
                 writeImage(ifsAccumulator, "barnsleys_fern");
@@ -48,20 +53,9 @@ public final class IFSMaker {
     }
 
     private static void writeImage(final IFSAccumulator ifsAccumulator, final String fileName) {
-
-        final int width = ifsAccumulator.width();
-        final int height = ifsAccumulator.height();
-
-        try (final PrintStream outputStream = new PrintStream("res/" + fileName + ".pbm")) {
-            outputStream.println("P1");
-            outputStream.printf("%d %d", width, height);
-            for (int j = height - 1; j >= 0; --j) {
-                for (int i = 0; i < width; ++i) {
-                    outputStream.print(ifsAccumulator.isHit(i, j) ? 1 : 0);
-                }
-                outputStream.println();
-            }
-        } catch (final FileNotFoundException exception) {
+        try {
+            PBMWriter.write(ifsAccumulator, Paths.get("res", fileName + ".pbm"));
+        } catch (final IOException exception) {
             exception.printStackTrace();
         }
     }
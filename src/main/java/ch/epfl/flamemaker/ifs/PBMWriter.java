@@ -0,0 +1,93 @@
+package ch.epfl.flamemaker.ifs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an {@code IFSAccumulator} as binary PBM image (.pbm, P4): the fields which were hit are
+ * black, eight fields are packed per byte and every row starts with a new byte.
+ * <p>
+ * The rows are written from the top to the bottom one. They are packed into a reusable
+ * {@code ByteBuffer}, which is written to a {@code FileChannel} whenever it is full
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+public final class PBMWriter {
+
+    /**
+     * Minimal size of the buffer the rows are packed into, in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Uninstantiable class
+     */
+    private PBMWriter() {
+    }
+
+    /**
+     * Writes the accumulator to the specified file, replacing it if it exists
+     *
+     * @param accumulator to write
+     * @param file        to write to
+     * @throws IOException if the file could not be written
+     */
+    public static void write(final IFSAccumulator accumulator, final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(accumulator, channel);
+        }
+    }
+
+    /**
+     * Writes the accumulator to the specified channel, starting at its current position
+     *
+     * @param accumulator to write
+     * @param channel     to write to
+     * @throws IOException if the channel could not be written
+     */
+    public static void write(final IFSAccumulator accumulator, final FileChannel channel) throws IOException {
+        final int width = accumulator.width();
+        final int height = accumulator.height();
+        final String header = String.format("P4\n%d %d\n", width, height);
+
+        writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+
+        // At least one row per buffer, as many as fit otherwise
+        final int rowBytes = (width + 7) / 8;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, rowBytes));
+
+        // The rows of the accumulator are ordered from the bottom to the top
+        for (int y = height - 1; y >= 0; --y) {
+            if (buffer.remaining() < rowBytes) {
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+
+            accumulator.packRow(y, buffer);
+        }
+
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer to the channel
+     *
+     * @param channel to write to
+     * @param buffer  to write
+     * @throws IOException if the channel could not be written
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
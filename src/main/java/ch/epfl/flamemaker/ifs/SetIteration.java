@@ -0,0 +1,247 @@
+package ch.epfl.flamemaker.ifs;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+import java.util.List;
+
+/**
+ * Computes a cover of the fractal of an {@code IFS} without randomness, on the grid of the
+ * accumulator: starting with the fields containing the fixed point of every transformation, which
+ * are part of the fractal, every transformation is applied to the whole of every field hit,
+ * hitting every field its image overlaps. Since only the fields hit in the last round can lead to
+ * new fields, every round only visits those (the frontier), and the computation stops as soon as
+ * a round does not hit any new field, so every field is visited once per transformation.
+ * <p>
+ * The fields hit are mapped into themselves by every transformation, so they contain the whole
+ * fractal, as long as it lies within the frame, since points outside of it are not followed.
+ * They are a conservative cover though: fields merely overlapped by the image of a field are hit
+ * too, so the result is thicker than the one of the chaos game. The frontiers are bitsets laid
+ * out like the fields of the {@code IFSAccumulator}
+ *
+ * @author Groux Marcel Jean Jacques	227630
+ * @author Platzer Casimir Benjamin		228352
+ * @version 1.0
+ */
+final class SetIteration {
+
+    /**
+     * Width of the accumulator
+     */
+    private final int width;
+
+    /**
+     * Height of the accumulator
+     */
+    private final int height;
+
+    /**
+     * Amount of {@code longs} per row
+     */
+    private final int wordsPerRow;
+
+    /**
+     * The coefficients of every transformation, acting on the coordinates of the fields
+     */
+    private final double[][] coefficients;
+
+    /**
+     * The fields hit so far
+     */
+    private final long[] hit;
+
+    /**
+     * The fields hit in the last round
+     */
+    private long[] frontier;
+
+    /**
+     * The fields hit in the current round
+     */
+    private long[] next;
+
+    /**
+     * Creates a new {@code SetIteration}
+     *
+     * @param transformations of the {@code IFS}
+     * @param frame           limiting the area
+     * @param width           of the accumulator
+     * @param height          of the accumulator
+     * @throws java.lang.IllegalArgumentException if the width or the height are not greater than zero
+     */
+    SetIteration(final List<AffineTransformation> transformations, final Rectangle frame, final int width,
+                 final int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be greater than zero");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = IFSAccumulator.wordsPerRow(width);
+        this.hit = new long[IFSAccumulator.wordCount(width, height)];
+        this.frontier = new long[hit.length];
+        this.next = new long[hit.length];
+
+        // The same mapping to the grid as the one of IFSAccumulatorBuilder, and its inverse
+        final double sX = width / frame.width();
+        final double sY = height / frame.height();
+        final AffineTransformation toGrid = AffineTransformation.newTranslation(-frame.left(), -frame.bottom())
+                .composeWith(AffineTransformation.newScaling(sX, sY));
+        final AffineTransformation toFrame = AffineTransformation.newScaling(1 / sX, 1 / sY)
+                .composeWith(AffineTransformation.newTranslation(frame.left(), frame.bottom()));
+
+        this.coefficients = new double[transformations.size()][];
+        for (int i = 0; i < coefficients.length; ++i) {
+            coefficients[i] = toFrame.composeWith(transformations.get(i)).composeWith(toGrid).coefficients();
+        }
+    }
+
+    /**
+     * Hits the fields until no new field is hit
+     *
+     * @return the accumulator containing the fields hit, sharing their bits
+     */
+    IFSAccumulator compute() {
+        for (final double[] t : coefficients) {
+            seed(t);
+        }
+
+        while (swapFrontier()) {
+            for (int word = 0; word < frontier.length; ++word) {
+                final int y = word / wordsPerRow;
+                final int firstX = (word % wordsPerRow) << 6;
+
+                // Visits the set bits of the word only
+                for (long bits = frontier[word]; bits != 0; bits &= bits - 1) {
+                    final int x = firstX + Long.numberOfTrailingZeros(bits);
+
+                    for (final double[] t : coefficients) {
+                        hitImage(t, x, y);
+                    }
+                }
+            }
+        }
+
+        return new IFSAccumulator(width, height, hit);
+    }
+
+    /**
+     * Hits the field containing the fixed point of the transformation, if it has exactly one
+     *
+     * @param t coefficients of the transformation
+     */
+    private void seed(final double[] t) {
+        // Solves (1 - a) x - b y = c and -d x + (1 - e) y = f
+        final double determinant = (1 - t[0]) * (1 - t[4]) - t[1] * t[3];
+        if (determinant != 0) {
+            hit((t[2] * (1 - t[4]) + t[1] * t[5]) / determinant, (t[5] * (1 - t[0]) + t[3] * t[2]) / determinant);
+        }
+    }
+
+    /**
+     * Hits every field overlapping the image of a field, which is a parallelogram: the fields
+     * within its bounding box are tested against the two other axes of the parallelogram
+     * (separating axes), so a thin slanted image does not hit its whole bounding box
+     *
+     * @param t coefficients of the transformation
+     * @param x coordinate of the field
+     * @param y coordinate of the field
+     */
+    private void hitImage(final double[] t, final int x, final int y) {
+        // The image of the lower left corner and of the two edges starting there
+        final double pX = t[0] * x + t[1] * y + t[2];
+        final double pY = t[3] * x + t[4] * y + t[5];
+        final double uX = t[0];
+        final double uY = t[3];
+        final double vX = t[1];
+        final double vY = t[4];
+
+        final double minX = pX + Math.min(0, uX) + Math.min(0, vX);
+        final double maxX = pX + Math.max(0, uX) + Math.max(0, vX);
+        final double minY = pY + Math.min(0, uY) + Math.min(0, vY);
+        final double maxY = pY + Math.max(0, uY) + Math.max(0, vY);
+
+        // Fields only touching the bounding box at its border are left out, unless it is flat
+        final int left = (int) Math.max(0, Math.floor(minX));
+        final int right = (int) Math.min(width - 1, Math.max(Math.floor(minX), Math.ceil(maxX) - 1));
+        final int bottom = (int) Math.max(0, Math.floor(minY));
+        final int top = (int) Math.min(height - 1, Math.max(Math.floor(minY), Math.ceil(maxY) - 1));
+
+        for (int fieldY = bottom; fieldY <= top; ++fieldY) {
+            for (int fieldX = left; fieldX <= right; ++fieldX) {
+                if (overlaps(-uY, uX, pX, pY, vX, vY, fieldX, fieldY)
+                        && overlaps(-vY, vX, pX, pY, uX, uY, fieldX, fieldY)) {
+                    hit(fieldX, fieldY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests whether the projections of a parallelogram and a field onto an axis overlap, the axis
+     * being perpendicular to one edge of the parallelogram so its projection is the one of the other
+     *
+     * @param nX     x-component of the axis
+     * @param nY     y-component of the axis
+     * @param pX     x-coordinate of a corner of the parallelogram
+     * @param pY     y-coordinate of a corner of the parallelogram
+     * @param eX     x-component of the other edge starting at the corner
+     * @param eY     y-component of the other edge starting at the corner
+     * @param fieldX coordinate of the field
+     * @param fieldY coordinate of the field
+     * @return whether the projections overlap, touching included
+     */
+    private static boolean overlaps(final double nX, final double nY, final double pX, final double pY,
+                                    final double eX, final double eY, final int fieldX, final int fieldY) {
+        final double corner = nX * pX + nY * pY;
+        final double edge = nX * eX + nY * eY;
+        final double field = nX * fieldX + nY * fieldY;
+
+        return corner + Math.min(0, edge) <= field + Math.max(0, nX) + Math.max(0, nY)
+                && field + Math.min(0, nX) + Math.min(0, nY) <= corner + Math.max(0, edge);
+    }
+
+    /**
+     * Hits the field containing the specified coordinates on the grid, if there is one
+     * and it was not hit before, adding it to the current round
+     *
+     * @param x coordinate on the grid
+     * @param y coordinate on the grid
+     */
+    private void hit(final double x, final double y) {
+        // Also rejects NaN
+        if (!(x >= 0 && x < width && y >= 0 && y < height)) {
+            return;
+        }
+
+        final int fieldX = (int) x;
+        final int index = (int) y * wordsPerRow + (fieldX >>> 6);
+
+        // Shifting a long only uses the lowest six bits of the distance
+        final long bit = 1L << fieldX;
+
+        if ((hit[index] & bit) == 0) {
+            hit[index] |= bit;
+            next[index] |= bit;
+        }
+    }
+
+    /**
+     * Makes the fields hit in the current round the frontier of the next one
+     *
+     * @return whether any field was hit in the current round
+     */
+    private boolean swapFrontier() {
+        final long[] visited = frontier;
+        frontier = next;
+        next = visited;
+
+        boolean any = false;
+        for (int i = 0; i < next.length; ++i) {
+            next[i] = 0;
+            any |= (frontier[i] != 0);
+        }
+
+        return any;
+    }
+}